@@ -0,0 +1,187 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.protos.common.Common;
+import org.hyperledger.fabric.protos.peer.FabricProposal;
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse;
+import org.hyperledger.fabric.protos.peer.FabricTransaction;
+
+import com.alibaba.fastjson.JSON;
+import com.defilab.ChainAdapter.codec.OfferCodec;
+import com.github.ontio.OntSdk;
+import com.github.ontio.account.Account;
+import com.github.ontio.common.Helper;
+import com.github.ontio.core.block.Block;
+import com.github.ontio.core.transaction.Transaction;
+import com.github.ontio.crypto.SignatureScheme;
+import com.github.ontio.network.connect.ConnectMgr;
+import com.github.ontio.network.exception.ConnectorException;
+import com.github.ontio.smartcontract.neovm.abi.AbiFunction;
+import com.github.ontio.smartcontract.neovm.abi.BuildParams;
+import com.github.ontio.smartcontract.neovm.abi.Parameter;
+import com.google.protobuf.ByteString;
+
+// Offers are read from the checked in fixtures/offers.json, the Fabric envelopes and Ontology transactions
+// wrapping them are built the same way the chain code and OntologyLedger write them, so nothing needs a network.
+public class BenchmarkFixtures {
+    public static final String CHANNEL = "mychannel";
+    public static final String ONTOLOGY_CONTRACT = "25b5e3d5325793b3f4411b47e92d8306b903cc29";
+    public static final String ONTOLOGY_KEY = "274b0b664d9c1e993c1d62a42f78ba84c379e332aa1d050ce9c1840820acee8b";
+
+    private static List<Map<String, Object>> offers = null;
+
+    @SuppressWarnings("unchecked")
+    public static synchronized List<Map<String, Object>> getOffers() throws IOException {
+        if (offers == null) {
+            try (InputStream in = BenchmarkFixtures.class.getResourceAsStream("/fixtures/offers.json")) {
+                if (in == null) {
+                    throw new IOException("fixtures/offers.json is missing from the jmh resources");
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                    out.write(buffer, 0, read);
+                }
+                List<Map<String, Object>> ret = new ArrayList<>();
+                for (Object offer : (List<Object>) JSON.parse(new String(out.toByteArray(), StandardCharsets.UTF_8))) {
+                    ret.add((Map<String, Object>) offer);
+                }
+                offers = ret;
+            }
+        }
+        return offers;
+    }
+
+    //****************************************
+    //*************** Fabric *****************
+    //****************************************
+
+    // Chain code response payload: the offer JSON with offer_body stored as an encoded JSON string
+    public static ByteString fabricPayload(Map<String, Object> offer) {
+        Map<String, Object> stored = new LinkedHashMap<>(offer);
+        if (!"TopUp".equals(offer.get("action"))) {
+            stored.put("offer_body", JSON.toJSONString(offer.get("offer_body")));
+        }
+        return ByteString.copyFrom(JSON.toJSONString(stored).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Payload of an endorser transaction envelope, as returned by queryTransactionByID
+    public static ByteString fabricEnvelopePayload(String txId, ByteString responsePayload) {
+        FabricProposal.ChaincodeAction chaincodeAction = FabricProposal.ChaincodeAction.newBuilder()
+                .setResponse(FabricProposalResponse.Response.newBuilder().setStatus(200).setMessage("success").setPayload(responsePayload))
+                .build();
+        FabricProposalResponse.ProposalResponsePayload proposalResponsePayload = FabricProposalResponse.ProposalResponsePayload.newBuilder()
+                .setExtension(chaincodeAction.toByteString())
+                .build();
+        FabricTransaction.ChaincodeActionPayload actionPayload = FabricTransaction.ChaincodeActionPayload.newBuilder()
+                .setAction(FabricTransaction.ChaincodeEndorsedAction.newBuilder().setProposalResponsePayload(proposalResponsePayload.toByteString()))
+                .build();
+        FabricTransaction.Transaction transaction = FabricTransaction.Transaction.newBuilder()
+                .addActions(FabricTransaction.TransactionAction.newBuilder().setPayload(actionPayload.toByteString()))
+                .build();
+        Common.ChannelHeader channelHeader = Common.ChannelHeader.newBuilder()
+                .setType(Common.HeaderType.ENDORSER_TRANSACTION_VALUE)
+                .setChannelId(CHANNEL)
+                .setTxId(txId)
+                .build();
+        return Common.Payload.newBuilder()
+                .setHeader(Common.Header.newBuilder().setChannelHeader(channelHeader.toByteString()))
+                .setData(transaction.toByteString())
+                .build()
+                .toByteString();
+    }
+
+    public static Common.Block fabricBlock(long blockNumber, int transactionCount) throws IOException {
+        List<Map<String, Object>> offers = getOffers();
+        Common.BlockData.Builder data = Common.BlockData.newBuilder();
+        for (int i = 0; i < transactionCount; i++) {
+            ByteString payload = fabricEnvelopePayload(transactionId(blockNumber, i), fabricPayload(offers.get(i % offers.size())));
+            data.addData(Common.Envelope.newBuilder().setPayload(payload).build().toByteString());
+        }
+        // Committed blocks carry one validation code per envelope, all VALID (0) here
+        Common.BlockMetadata.Builder metadata = Common.BlockMetadata.newBuilder()
+                .addMetadata(ByteString.EMPTY)
+                .addMetadata(ByteString.EMPTY)
+                .addMetadata(ByteString.copyFrom(new byte[transactionCount]))
+                .addMetadata(ByteString.EMPTY);
+        return Common.Block.newBuilder()
+                .setHeader(Common.BlockHeader.newBuilder().setNumber(blockNumber))
+                .setData(data)
+                .setMetadata(metadata)
+                .build();
+    }
+
+    public static String transactionId(long blockNumber, int index) {
+        return String.format("%032x%032x", blockNumber, index);
+    }
+
+    //****************************************
+    //************** Ontology ****************
+    //****************************************
+
+    public static Account ontologyAccount() throws Exception {
+        return new Account(Helper.hexToBytes(ONTOLOGY_KEY), SignatureScheme.SHA256WITHECDSA);
+    }
+
+    // Same smart contract parameters as OntologyLedger.putOffer / acceptOffer
+    public static Map<String, Object> ontologyParams(Map<String, Object> offer) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("offer_id", offer.get("offer_id"));
+        params.put("offer_body", OfferCodec.encodeOntologyBody(JSON.toJSONString(offer)));
+        if (offer.containsKey("postman_receipt")) {
+            params.put("postman_receipt", offer.get("postman_receipt"));
+        }
+        return params;
+    }
+
+    public static Transaction ontologyTransaction(Account account, Map<String, Object> offer) throws Exception {
+        Parameter scParameter = new Parameter();
+        scParameter.type = "Map";
+        String functionName = "AcceptOffer".equals(offer.get("action")) ? "AcceptOffer" : "PutOffer";
+        AbiFunction func = new AbiFunction(functionName, scParameter);
+        func.name = functionName;
+        func.setParamsValue(ontologyParams(offer));
+        return OntSdk.getInstance().vm().makeInvokeCodeTransaction(Helper.reverse(ONTOLOGY_CONTRACT), null, BuildParams.serializeAbiFunction(func), account.getAddressU160().toBase58(), 30000, 0);
+    }
+
+    public static Block ontologyBlock(int height, int transactionCount) throws Exception {
+        List<Map<String, Object>> offers = getOffers();
+        Account account = ontologyAccount();
+        Block block = new Block();
+        block.height = height;
+        block.transactions = new Transaction[transactionCount];
+        for (int i = 0; i < transactionCount; i++) {
+            block.transactions[i] = ontologyTransaction(account, offers.get(i % offers.size()));
+        }
+        return block;
+    }
+
+    // Serves a fixed block for every height so OntologyLedger can be driven without a node
+    public static class FixedBlockConnectMgr extends ConnectMgr {
+        private Block block = null;
+
+        public FixedBlockConnectMgr(Block block) {
+            super("http://127.0.0.1:20336", "rpc");
+            this.block = block;
+        }
+
+        @Override
+        public int getBlockHeight() throws ConnectorException, IOException {
+            return block.height;
+        }
+
+        @Override
+        public Block getBlock(int height) throws ConnectorException, IOException {
+            return block;
+        }
+    }
+}
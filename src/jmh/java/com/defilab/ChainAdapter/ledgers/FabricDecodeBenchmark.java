@@ -0,0 +1,80 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.protos.common.Common;
+import org.hyperledger.fabric.sdk.ActionResponse;
+import org.hyperledger.fabric.sdk.PublicEnvelopeDeserializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.ByteString;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FabricDecodeBenchmark {
+    @Param({"10", "200"})
+    private int transactionsPerBlock;
+
+    private ByteString envelopePayload = null;
+    private ByteString responsePayload = null;
+    private Common.Block block = null;
+    private TransactionFilter selectiveFilter = null;
+
+    @Setup
+    public void setUp() throws IOException {
+        Map<String, Object> offer = BenchmarkFixtures.getOffers().get(1);
+        responsePayload = BenchmarkFixtures.fabricPayload(offer);
+        envelopePayload = BenchmarkFixtures.fabricEnvelopePayload(BenchmarkFixtures.transactionId(0, 0), responsePayload);
+        block = BenchmarkFixtures.fabricBlock(1, transactionsPerBlock);
+        selectiveFilter = TransactionFilter.byOfferIds((String) offer.get("offer_id"));
+    }
+
+    @Benchmark
+    public List<ActionResponse> parseActions() {
+        return PublicEnvelopeDeserializer.parseActions(envelopePayload);
+    }
+
+    @Benchmark
+    public List<ActionResponse> parseBlock() throws IOException {
+        return PublicEnvelopeDeserializer.parseBlock(block);
+    }
+
+    @Benchmark
+    public Map<String, Object> parseTransaction() throws IOException {
+        return HyperLedger.parseTransaction(responsePayload);
+    }
+
+    // getTransaction without the peer round trip
+    @Benchmark
+    public Map<String, Object> parseEnvelopeTransaction() throws IOException {
+        return HyperLedger.parseTransaction(PublicEnvelopeDeserializer.parseActions(envelopePayload).get(0).getPayload());
+    }
+
+    // getTransactionsFromBlock without the peer round trip
+    @Benchmark
+    public List<Map<String, Object>> decodeBlock() throws IOException {
+        return HyperLedger.decodeBlock(block, 1, TransactionFilter.all());
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> decodeBlockFiltered() throws IOException {
+        return HyperLedger.decodeBlock(block, 1, selectiveFilter);
+    }
+}
@@ -0,0 +1,69 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alibaba.fastjson.JSON;
+import com.defilab.ChainAdapter.codec.OfferCodec;
+import com.github.ontio.core.block.Block;
+import com.github.ontio.core.transaction.Transaction;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OntologyCodecBenchmark {
+    @Param({"10", "200"})
+    private int transactionsPerBlock;
+
+    private Map<String, Object> offer = null;
+    private Transaction transaction = null;
+    private OntologyLedger ledger = null;
+    private TransactionFilter selectiveFilter = null;
+
+    @Setup
+    public void setUp() throws Exception {
+        offer = BenchmarkFixtures.getOffers().get(1);
+        transaction = BenchmarkFixtures.ontologyTransaction(BenchmarkFixtures.ontologyAccount(), offer);
+        Block block = BenchmarkFixtures.ontologyBlock(1, transactionsPerBlock);
+        ledger = new OntologyLedger(BenchmarkFixtures.ONTOLOGY_KEY, new BenchmarkFixtures.FixedBlockConnectMgr(block), BenchmarkFixtures.ONTOLOGY_CONTRACT);
+        selectiveFilter = TransactionFilter.byOfferIds((String) offer.get("offer_id"));
+    }
+
+    // OFFER_BODY_CODE wrapping done by putOffer / acceptOffer
+    @Benchmark
+    public String encodeOfferBody() {
+        return OfferCodec.encodeOntologyBody(JSON.toJSONString(offer));
+    }
+
+    @Benchmark
+    public Map<String, Object> parseTransaction() throws IOException {
+        return OntologyLedger.parseTransaction(transaction);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> getTransactionsFromBlock() throws Exception {
+        return ledger.getTransactionsFromBlock(1, TransactionFilter.all());
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> getTransactionsFromBlockFiltered() throws Exception {
+        return ledger.getTransactionsFromBlock(1, selectiveFilter);
+    }
+}
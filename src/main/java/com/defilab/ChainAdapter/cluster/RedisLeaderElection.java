@@ -0,0 +1,68 @@
+package com.defilab.ChainAdapter.cluster;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+// Lease based election: the leader holds <key> = its node id with a TTL and keeps renewing it, another node takes
+// over once a lease expires. Renewal and release only touch the key while it still holds this node's id.
+public class RedisLeaderElection implements AutoCloseable {
+    private static final String RENEW_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end";
+    private static final String RELEASE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+    private JedisPool pool = null;
+    private String key = null;
+    private String nodeId = UUID.randomUUID().toString();
+    private long leaseMillis;
+    private volatile boolean leader = false;
+
+    public RedisLeaderElection(JedisPool pool, String key, long leaseMillis) {
+        this.pool = pool;
+        this.key = key;
+        this.leaseMillis = leaseMillis;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    // Acquires or renews the lease, call it well within leaseMillis
+    public boolean refresh() {
+        try (Jedis jedis = pool.getResource()) {
+            if (leader) {
+                Object renewed = jedis.eval(RENEW_SCRIPT, Collections.singletonList(key), Arrays.asList(nodeId, Long.toString(leaseMillis)));
+                leader = Long.valueOf(1).equals(renewed);
+            }
+            if (!leader) {
+                leader = "OK".equals(jedis.set(key, nodeId, "NX", "PX", leaseMillis));
+            }
+        } catch (Exception e) {
+            leader = false;
+        }
+        return leader;
+    }
+
+    @Override
+    public void close() {
+        if (!leader) {
+            return;
+        }
+        leader = false;
+        try (Jedis jedis = pool.getResource()) {
+            jedis.eval(RELEASE_SCRIPT, Collections.singletonList(key), Collections.singletonList(nodeId));
+        } catch (Exception ignored) {
+        }
+    }
+}
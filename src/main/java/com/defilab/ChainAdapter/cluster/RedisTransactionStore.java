@@ -0,0 +1,104 @@
+package com.defilab.ChainAdapter.cluster;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.defilab.ChainAdapter.index.IndexedTransaction;
+import com.defilab.ChainAdapter.index.TransactionStatusStore;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+
+// Committed transactions shared by every adapter node, one hash per transaction:
+//   <namespace>:tx:<tx_id> -> offer_id, action, status (1/0), block
+// plus <namespace>:height, the last block stored, and the <namespace>:commits channel where every stored block
+// is announced as "<tx_id> <status>" lines.
+public class RedisTransactionStore implements TransactionStatusStore {
+    private JedisPool pool = null;
+    private String namespace = null;
+    private int ttlSeconds;
+
+    public RedisTransactionStore(JedisPool pool, String namespace) {
+        this(pool, namespace, 7 * 24 * 3600);
+    }
+
+    public RedisTransactionStore(JedisPool pool, String namespace, int ttlSeconds) {
+        this.pool = pool;
+        this.namespace = namespace;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public JedisPool getPool() {
+        return pool;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getCommitChannel() {
+        return namespace + ":commits";
+    }
+
+    @Override
+    public IndexedTransaction findByTransactionId(String transactionId) throws Exception {
+        Map<String, String> fields;
+        try (Jedis jedis = pool.getResource()) {
+            fields = jedis.hgetAll(transactionKey(transactionId));
+        }
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        String block = fields.get("block");
+        return new IndexedTransaction(fields.get("offer_id"), transactionId, fields.get("action"), "1".equals(fields.get("status")),
+                block == null ? null : Integer.valueOf(block));
+    }
+
+    // Stores the block's transactions, moves the stored height and announces them, all in one round trip
+    public void putBlock(Integer blockNumber, List<IndexedTransaction> transactions) {
+        List<String> lines = new ArrayList<>(transactions.size());
+        try (Jedis jedis = pool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (IndexedTransaction tx : transactions) {
+                Map<String, String> fields = new HashMap<>();
+                if (tx.getOfferId() != null) fields.put("offer_id", tx.getOfferId());
+                if (tx.getAction() != null) fields.put("action", tx.getAction());
+                fields.put("status", Boolean.TRUE.equals(tx.getStatus()) ? "1" : "0");
+                fields.put("block", blockNumber.toString());
+                pipeline.hmset(transactionKey(tx.getTransactionId()), fields);
+                pipeline.expire(transactionKey(tx.getTransactionId()), ttlSeconds);
+                lines.add(tx.getTransactionId() + " " + fields.get("status"));
+            }
+            pipeline.set(heightKey(), blockNumber.toString());
+            if (!lines.isEmpty()) {
+                pipeline.publish(getCommitChannel(), String.join("\n", lines));
+            }
+            pipeline.sync();
+        }
+    }
+
+    public Integer getStoredHeight() {
+        String height;
+        try (Jedis jedis = pool.getResource()) {
+            height = jedis.get(heightKey());
+        }
+        return height == null ? null : Integer.valueOf(height);
+    }
+
+    public void setStoredHeight(Integer blockNumber) {
+        try (Jedis jedis = pool.getResource()) {
+            jedis.set(heightKey(), blockNumber.toString());
+        }
+    }
+
+    private String transactionKey(String transactionId) {
+        return namespace + ":tx:" + transactionId;
+    }
+
+    private String heightKey() {
+        return namespace + ":height";
+    }
+}
@@ -0,0 +1,200 @@
+package com.defilab.ChainAdapter.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hyperledger.fabric.protos.peer.FabricTransaction;
+
+import com.defilab.ChainAdapter.index.IndexedTransaction;
+import com.defilab.ChainAdapter.ledgers.Ledger;
+import com.defilab.ChainAdapter.ledgers.TransactionFilter;
+import com.defilab.ChainAdapter.ledgers.TransactionWatcher;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+// Cluster wide commit notifications. The elected node reads every new block once, stores its transactions in
+// Redis and publishes them, every node (the leader included) resolves its waiters from the commit channel.
+// Verification then finds the stored result through the ledger's TransactionStatusStore instead of the chain.
+public class RedisTransactionWatcher extends TransactionWatcher {
+    private Ledger ledger = null;
+    private RedisTransactionStore store = null;
+    private RedisLeaderElection election = null;
+    private long pollInterval;
+    private int maxBlocksPerPoll = 64;
+    private volatile boolean running = false;
+    private ScheduledExecutorService poller = null;
+    private Thread subscriber = null;
+    private JedisPubSub subscription = null;
+    private Logger logger = LogManager.getLogger(RedisTransactionWatcher.class);
+
+    public RedisTransactionWatcher(Ledger ledger, RedisTransactionStore store, RedisLeaderElection election) {
+        this(ledger, store, election, 500);
+    }
+
+    public RedisTransactionWatcher(Ledger ledger, RedisTransactionStore store, RedisLeaderElection election, long pollIntervalMillis) {
+        this.ledger = ledger;
+        this.store = store;
+        this.election = election;
+        this.pollInterval = pollIntervalMillis;
+    }
+
+    // Makes the ledger verify through the shared store and wait on cluster notifications
+    public static RedisTransactionWatcher attach(Ledger ledger, RedisTransactionStore store) {
+        RedisLeaderElection election = new RedisLeaderElection(store.getPool(), store.getNamespace() + ":leader", 5000);
+        RedisTransactionWatcher watcher = new RedisTransactionWatcher(ledger, store, election);
+        ledger.setTransactionStatusStore(store);
+        ledger.setTransactionWatcher(watcher);
+        return watcher;
+    }
+
+    public boolean isLeader() {
+        return election.isLeader();
+    }
+
+    @Override
+    protected synchronized void start() throws Exception {
+        running = true;
+        subscription = new JedisPubSub() {
+            @Override
+            public void onMessage(String channel, String message) {
+                for (String line : message.split("\n")) {
+                    int separator = line.indexOf(' ');
+                    if (separator > 0) {
+                        notifyCommitted(line.substring(0, separator), "1".equals(line.substring(separator + 1)));
+                    }
+                }
+            }
+
+            @Override
+            public void onSubscribe(String channel, int subscribedChannels) {
+                resolveStored();
+            }
+        };
+        subscriber = new Thread(this::subscribe, "redis-tx-subscriber");
+        subscriber.setDaemon(true);
+        subscriber.start();
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-tx-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, 0, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void subscribe() {
+        while (running) {
+            try (Jedis jedis = store.getPool().getResource()) {
+                jedis.subscribe(subscription, store.getCommitChannel());
+            } catch (Exception e) {
+                logger.error(String.format("Lost commit channel subscription (%s)", e.getMessage()));
+            }
+            if (running) {
+                try {
+                    TimeUnit.SECONDS.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Announcements sent while this node was not subscribed are lost, pick their results up from the store
+    private void resolveStored() {
+        for (String transactionId : getPendingTransactionIds()) {
+            try {
+                IndexedTransaction tx = store.findByTransactionId(transactionId);
+                if (tx != null) {
+                    notifyCommitted(transactionId, tx.getStatus());
+                }
+            } catch (Exception e) {
+                logger.debug(String.format("Failed to read transaction %s from redis (%s)", transactionId, e.getMessage()));
+            }
+        }
+    }
+
+    private void poll() {
+        if (!election.refresh()) {
+            return;
+        }
+        try {
+            int latestBlock = ledger.getLatestBlockNumber();
+            Integer storedHeight = store.getStoredHeight();
+            if (storedHeight == null) {
+                // A new cluster starts at the tip, older transactions are verified against the chain
+                store.setStoredHeight(latestBlock);
+                return;
+            }
+            int toBlock = Math.min(latestBlock, storedHeight + maxBlocksPerPoll);
+            if (toBlock <= storedHeight) {
+                return;
+            }
+            ledger.scan(storedHeight + 1, toBlock, TransactionFilter.all(), (blockNumber, transactions) -> {
+                if (!election.isLeader()) {
+                    throw new Exception("Lost leadership");
+                }
+                store.putBlock(blockNumber, toIndexed(blockNumber, transactions));
+            });
+        } catch (Exception e) {
+            logger.error(String.format("Failed to publish new blocks (%s)", e.getMessage()));
+        }
+    }
+
+    private static List<IndexedTransaction> toIndexed(Integer blockNumber, List<Map<String, Object>> transactions) {
+        List<IndexedTransaction> ret = new ArrayList<>(transactions.size());
+        for (Map<String, Object> tx : transactions) {
+            Object transactionId = tx.get("tx_id");
+            if (transactionId == null) {
+                continue;
+            }
+            Object offerId = tx.get("offer_id");
+            Object action = tx.get("action");
+            ret.add(new IndexedTransaction(offerId == null ? null : offerId.toString(), transactionId.toString(),
+                    action == null ? null : action.toString(), isValid(tx), blockNumber));
+        }
+        return ret;
+    }
+
+    // Every node resolves its waiters from this, so it must be the committer's verdict: a Fabric transaction
+    // invalidated at commit (e.g. MVCC conflict) is endorsed fine but has a non VALID code in the block metadata.
+    // Ontology blocks only hold executed transactions and carry neither.
+    private static boolean isValid(Map<String, Object> tx) {
+        Object validationCode = tx.get("validation_code");
+        if (validationCode != null && ((Number) validationCode).intValue() != FabricTransaction.TxValidationCode.VALID_VALUE) {
+            return false;
+        }
+        Object status = tx.get("status");
+        return status == null ? validationCode == null : Boolean.TRUE.equals(status);
+    }
+
+    public void setMaxBlocksPerPoll(int maxBlocksPerPoll) {
+        this.maxBlocksPerPoll = maxBlocksPerPoll;
+    }
+
+    @Override
+    protected void stop() {
+        running = false;
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+        if (subscription != null) {
+            try {
+                subscription.unsubscribe();
+            } catch (Exception ignored) {
+            }
+            subscription = null;
+        }
+        if (subscriber != null) {
+            subscriber.interrupt();
+            subscriber = null;
+        }
+        election.close();
+    }
+}
@@ -0,0 +1,58 @@
+package com.defilab.ChainAdapter.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+public class OfferCodec {
+    public static final String OFFER_BODY_CODE = "-----OFFERBODY-----";
+    private static final byte[] OFFER_BODY_MARKER = OFFER_BODY_CODE.getBytes(StandardCharsets.US_ASCII);
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    public interface InputSource {
+        InputStream open();
+    }
+
+    // Fabric chaincode response: a JSON offer whose offer_body is itself a JSON encoded string
+    public static OfferView decodeFabricPayload(byte[] payload) {
+        return new OfferView(jsonFactory, factory -> factory.createParser(payload), true);
+    }
+
+    public static OfferView decodeFabricPayload(InputSource payload) {
+        return new OfferView(jsonFactory, factory -> factory.createParser(payload.open()), true);
+    }
+
+    // Ontology invoke code: the offer JSON is Base64 encoded between two OFFERBODY markers
+    public static OfferView decodeOntologyCode(byte[] code) {
+        int start = indexOf(code, OFFER_BODY_MARKER, 0);
+        if (start < 0) {
+            return null;
+        }
+        start += OFFER_BODY_MARKER.length;
+        int end = indexOf(code, OFFER_BODY_MARKER, start);
+        int length = (end < 0 ? code.length : end) - start;
+        int offset = start;
+        return new OfferView(jsonFactory, factory -> factory.createParser(Base64.getDecoder().wrap(new ByteArrayInputStream(code, offset, length))), false);
+    }
+
+    public static String encodeOntologyBody(String offerJson) {
+        return OFFER_BODY_CODE + Base64.getEncoder().encodeToString(offerJson.getBytes(StandardCharsets.UTF_8)) + OFFER_BODY_CODE;
+    }
+
+    static int indexOf(byte[] data, byte[] pattern, int from) {
+        int end = data.length - pattern.length;
+        outer:
+        for (int i = from; i <= end; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
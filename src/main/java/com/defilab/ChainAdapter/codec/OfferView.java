@@ -0,0 +1,133 @@
+package com.defilab.ChainAdapter.codec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+// Offer backed by its encoded JSON. Top-level scalar fields are read with a shallow streaming pass that
+// skips nested values, the full map is only built when toMap() is called.
+public class OfferView {
+    interface Source {
+        JsonParser open(JsonFactory jsonFactory) throws IOException;
+    }
+
+    private JsonFactory jsonFactory = null;
+    private Source source = null;
+    private boolean nestedOfferBody;
+    private Map<String, Object> fields = null;
+    private Map<String, Object> materialized = null;
+
+    OfferView(JsonFactory jsonFactory, Source source, boolean nestedOfferBody) {
+        this.jsonFactory = jsonFactory;
+        this.source = source;
+        this.nestedOfferBody = nestedOfferBody;
+    }
+
+    public String getOfferId() throws IOException {
+        return getString("offer_id");
+    }
+
+    public String getAction() throws IOException {
+        return getString("action");
+    }
+
+    public String getString(String field) throws IOException {
+        Object value = get(field);
+        return value == null ? null : value.toString();
+    }
+
+    public Object get(String field) throws IOException {
+        if (materialized != null) {
+            return materialized.get(field);
+        }
+        if (fields == null) {
+            fields = readScalarFields();
+        }
+        return fields.get(field);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> toMap() throws IOException {
+        if (materialized == null) {
+            try (JsonParser parser = source.open(jsonFactory)) {
+                materialized = (Map<String, Object>) readValue(parser, expectObject(parser));
+            }
+            Object action = materialized.get("action");
+            Object offerBody = materialized.get("offer_body");
+            if (nestedOfferBody && action != null && !"TopUp".equals(action.toString()) && offerBody instanceof String) {
+                try (JsonParser parser = jsonFactory.createParser((String) offerBody)) {
+                    JsonToken token = parser.nextToken();
+                    materialized.put("offer_body", token == null ? null : readValue(parser, token));
+                }
+            }
+            fields = null;
+        }
+        return materialized;
+    }
+
+    private Map<String, Object> readScalarFields() throws IOException {
+        Map<String, Object> ret = new HashMap<>();
+        try (JsonParser parser = source.open(jsonFactory)) {
+            expectObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (token.isScalarValue()) {
+                    ret.put(name, readValue(parser, token));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static JsonToken expectObject(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Offer is not a JSON object");
+        }
+        return token;
+    }
+
+    private static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                Map<String, Object> object = new LinkedHashMap<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    object.put(name, readValue(parser, parser.nextToken()));
+                }
+                return object;
+            case START_ARRAY:
+                List<Object> array = new ArrayList<>();
+                for (JsonToken item = parser.nextToken(); item != JsonToken.END_ARRAY; item = parser.nextToken()) {
+                    array.add(readValue(parser, item));
+                }
+                return array;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                // Same as fastjson, which hands out BigDecimal for fractional numbers
+                return parser.getDecimalValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new JsonParseException(parser, String.format("Unexpected token %s in offer", token));
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.defilab.ChainAdapter.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Raw blocks as fetched from the chain, appended to numbered segment files that are never rewritten.
+// blocks.idx holds one fixed size slot per height (segment, offset, length), a zero length marks a missing
+// block. A block's bytes are written before its slot, so a slot left behind by a crash can only point past
+// the end of its segment and is treated as missing. Reads return slices of the mapped segments, no copy.
+public class BlockArchive implements Closeable {
+    private static final String INDEX_FILE = "blocks.idx";
+    private static final String SEGMENT_FILE = "blocks-%05d.seg";
+    private static final int SLOT_SIZE = 16;
+    private static final long DEFAULT_SEGMENT_SIZE = 256L << 20;
+    private static final long MAX_INDEX_SIZE = Integer.MAX_VALUE / SLOT_SIZE * SLOT_SIZE;
+    private Path directory = null;
+    private long segmentSize;
+    private FileChannel indexChannel = null;
+    private MappedByteBuffer index = null;
+    private List<FileChannel> segments = new ArrayList<>();
+    private List<MappedByteBuffer> mappedSegments = new ArrayList<>();
+    private long activeSegmentLength = 0;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public BlockArchive(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public BlockArchive(Path directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = Math.min(segmentSize, Integer.MAX_VALUE);
+        Files.createDirectories(directory);
+        indexChannel = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapIndex(Math.max(indexChannel.size(), 1 << 16));
+        for (int i = 0; Files.exists(segmentPath(i)); i++) {
+            segments.add(FileChannel.open(segmentPath(i), StandardOpenOption.READ, StandardOpenOption.WRITE));
+            mappedSegments.add(null);
+        }
+        if (segments.isEmpty()) {
+            addSegment();
+        }
+        // Bytes past the last slot written before a crash are left in place, they are simply never referenced
+        activeSegmentLength = segments.get(segments.size() - 1).size();
+    }
+
+    // The block's raw bytes, a read-only view of the mapped segment, or null when the height is not archived
+    public ByteBuffer get(int height) throws IOException {
+        lock.readLock().lock();
+        try {
+            long slot = (long) height * SLOT_SIZE;
+            if (height < 0 || slot + SLOT_SIZE > index.capacity()) {
+                return null;
+            }
+            int length = index.getInt((int) slot + 12);
+            if (length == 0) {
+                return null;
+            }
+            int segment = index.getInt((int) slot);
+            long offset = index.getLong((int) slot + 4);
+            MappedByteBuffer mapped = mappedSegment(segment, offset + length);
+            if (mapped == null) {
+                return null;
+            }
+            ByteBuffer ret = mapped.duplicate();
+            ret.position((int) offset).limit((int) (offset + length));
+            return ret.slice().asReadOnlyBuffer();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public byte[] getBytes(int height) throws IOException {
+        ByteBuffer block = get(height);
+        if (block == null) {
+            return null;
+        }
+        byte[] ret = new byte[block.remaining()];
+        block.get(ret);
+        return ret;
+    }
+
+    public boolean contains(int height) throws IOException {
+        lock.readLock().lock();
+        try {
+            long slot = (long) height * SLOT_SIZE;
+            return height >= 0 && slot + SLOT_SIZE <= index.capacity() && index.getInt((int) slot + 12) != 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(int height, byte[] block) throws IOException {
+        if (height < 0 || (long) height * SLOT_SIZE + SLOT_SIZE > MAX_INDEX_SIZE) {
+            throw new IllegalArgumentException(String.format("Block height %s is out of the archive's range", height));
+        }
+        if (block.length == 0 || block.length > segmentSize) {
+            throw new IllegalArgumentException(String.format("Block %s of %s bytes does not fit a segment", height, block.length));
+        }
+        lock.writeLock().lock();
+        try {
+            long slot = (long) height * SLOT_SIZE;
+            if (slot + SLOT_SIZE <= index.capacity() && index.getInt((int) slot + 12) != 0) {
+                return;
+            }
+            if (activeSegmentLength + block.length > segmentSize) {
+                addSegment();
+            }
+            int segment = segments.size() - 1;
+            long offset = activeSegmentLength;
+            ByteBuffer buffer = ByteBuffer.wrap(block);
+            while (buffer.hasRemaining()) {
+                activeSegmentLength += segments.get(segment).write(buffer, activeSegmentLength);
+            }
+            if (slot + SLOT_SIZE > index.capacity()) {
+                mapIndex(Math.min(MAX_INDEX_SIZE, Math.max(index.capacity() * 2L, slot + SLOT_SIZE)));
+            }
+            index.putInt((int) slot, segment);
+            index.putLong((int) slot + 4, offset);
+            index.putInt((int) slot + 12, block.length);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            segments.get(segments.size() - 1).force(false);
+            index.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        for (FileChannel segment : segments) {
+            segment.close();
+        }
+        indexChannel.close();
+    }
+
+    private void mapIndex(long size) throws IOException {
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void addSegment() throws IOException {
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).force(false);
+        }
+        segments.add(FileChannel.open(segmentPath(segments.size()), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        mappedSegments.add(null);
+        activeSegmentLength = 0;
+    }
+
+    // Full segments are mapped once, the active one is remapped whenever a read reaches past its mapping
+    private MappedByteBuffer mappedSegment(int segment, long end) throws IOException {
+        if (segment >= segments.size()) {
+            return null;
+        }
+        MappedByteBuffer mapped = mappedSegments.get(segment);
+        if (mapped != null && mapped.capacity() >= end) {
+            return mapped;
+        }
+        synchronized (mappedSegments) {
+            mapped = mappedSegments.get(segment);
+            if (mapped == null || mapped.capacity() < end) {
+                long size = segments.get(segment).size();
+                if (size < end) {
+                    return null;
+                }
+                mapped = segments.get(segment).map(FileChannel.MapMode.READ_ONLY, 0, size);
+                mappedSegments.set(segment, mapped);
+            }
+            return mapped;
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format(SEGMENT_FILE, segment));
+    }
+}
@@ -0,0 +1,37 @@
+package com.defilab.ChainAdapter.index;
+
+public class IndexedTransaction {
+    private String offerId;
+    private String transactionId;
+    private String action;
+    private Boolean status;
+    private Integer blockNumber;
+
+    public IndexedTransaction(String offerId, String transactionId, String action, Boolean status, Integer blockNumber) {
+        this.offerId = offerId;
+        this.transactionId = transactionId;
+        this.action = action;
+        this.status = status;
+        this.blockNumber = blockNumber;
+    }
+
+    public String getOfferId() {
+        return offerId;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public Boolean getStatus() {
+        return status;
+    }
+
+    public Integer getBlockNumber() {
+        return blockNumber;
+    }
+}
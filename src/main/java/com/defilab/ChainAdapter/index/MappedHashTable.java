@@ -0,0 +1,163 @@
+package com.defilab.ChainAdapter.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongPredicate;
+
+// Open addressing hash table of (key hash -> log offset) slots living in a memory-mapped file.
+// Keys are not stored, callers resolve collisions by checking the record the offset points at.
+class MappedHashTable implements Closeable {
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 16;
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+    private Path path = null;
+    private FileChannel channel = null;
+    private MappedByteBuffer[] chunks = null;
+    private long capacity;
+    private long count;
+    private long tag;
+
+    MappedHashTable(Path path, long initialCapacity) throws IOException {
+        this.path = path;
+        open(initialCapacity);
+    }
+
+    private void open(long initialCapacity) throws IOException {
+        boolean exists = Files.exists(path) && Files.size(path) >= HEADER_SIZE;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (exists) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0);
+            header.flip();
+            capacity = header.getLong();
+            count = header.getLong();
+            tag = header.getLong();
+        } else {
+            capacity = Long.highestOneBit(Math.max(16, initialCapacity - 1)) << 1;
+            count = 0;
+            tag = 0;
+            writeHeader();
+        }
+        long tableSize = capacity * SLOT_SIZE;
+        chunks = new MappedByteBuffer[(int) ((tableSize + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = i * CHUNK_SIZE;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + start, Math.min(CHUNK_SIZE, tableSize - start));
+        }
+    }
+
+    long find(long hash, LongPredicate matches) {
+        long mask = capacity - 1;
+        for (long i = hash & mask;; i = (i + 1) & mask) {
+            long value = slotValue(i);
+            if (value == 0) {
+                return -1;
+            }
+            if (slotHash(i) == hash && matches.test(value - 1)) {
+                return value - 1;
+            }
+        }
+    }
+
+    void put(long hash, long value, LongPredicate matches) throws IOException {
+        long mask = capacity - 1;
+        for (long i = hash & mask;; i = (i + 1) & mask) {
+            long current = slotValue(i);
+            if (current == 0) {
+                setSlot(i, hash, value + 1);
+                if (++count * 10 > capacity * 7) {
+                    grow();
+                }
+                return;
+            }
+            if (slotHash(i) == hash && matches.test(current - 1)) {
+                setSlot(i, hash, value + 1);
+                return;
+            }
+        }
+    }
+
+    long getTag() {
+        return tag;
+    }
+
+    void setTag(long tag) throws IOException {
+        this.tag = tag;
+        writeHeader();
+        channel.force(false);
+    }
+
+    void flush(long tag) throws IOException {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+        setTag(tag);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeHeader();
+        channel.close();
+    }
+
+    private void grow() throws IOException {
+        Path grownPath = Paths.get(path.toString() + ".grow");
+        Files.deleteIfExists(grownPath);
+        MappedHashTable grown = new MappedHashTable(grownPath, capacity * 2);
+        long mask = grown.capacity - 1;
+        for (long i = 0; i < capacity; i++) {
+            long value = slotValue(i);
+            if (value != 0) {
+                long hash = slotHash(i);
+                long j = hash & mask;
+                while (grown.slotValue(j) != 0) {
+                    j = (j + 1) & mask;
+                }
+                grown.setSlot(j, hash, value);
+            }
+        }
+        grown.count = count;
+        grown.tag = tag;
+        grown.flush(tag);
+        grown.close();
+        channel.close();
+        Files.move(grownPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open(capacity * 2);
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(capacity).putLong(count).putLong(tag);
+        header.clear();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private long slotHash(long slot) {
+        long position = slot * SLOT_SIZE;
+        return chunks[(int) (position >>> CHUNK_BITS)].getLong((int) (position & (CHUNK_SIZE - 1)));
+    }
+
+    private long slotValue(long slot) {
+        long position = slot * SLOT_SIZE + 8;
+        return chunks[(int) (position >>> CHUNK_BITS)].getLong((int) (position & (CHUNK_SIZE - 1)));
+    }
+
+    private void setSlot(long slot, long hash, long value) {
+        long position = slot * SLOT_SIZE;
+        MappedByteBuffer chunk = chunks[(int) (position >>> CHUNK_BITS)];
+        int offset = (int) (position & (CHUNK_SIZE - 1));
+        chunk.putLong(offset, hash);
+        chunk.putLong(offset + 8, value);
+    }
+}
@@ -0,0 +1,272 @@
+package com.defilab.ChainAdapter.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Append-only log of offer transactions with memory-mapped offer_id and tx_id lookup tables.
+// The checkpoint records the last indexed block and the log length that is known to be complete,
+// anything past it is discarded on open and the tables are rebuilt if they were not flushed with it.
+public class OfferIndex implements Closeable, TransactionStatusStore {
+    private static final String LOG_FILE = "offers.log";
+    private static final String OFFER_TABLE_FILE = "offers.idx";
+    private static final String TRANSACTION_TABLE_FILE = "transactions.idx";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final long INITIAL_CAPACITY = 1 << 16;
+    private Path directory = null;
+    private FileChannel log = null;
+    private MappedHashTable offerTable = null;
+    private MappedHashTable transactionTable = null;
+    private long logLength = 0;
+    private int indexedHeight = -1;
+    private boolean dirty = false;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static class Record {
+        private long previous;
+        private IndexedTransaction transaction;
+    }
+
+    public OfferIndex(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        long checkpointLength = readCheckpoint();
+        log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (log.size() < checkpointLength) {
+            throw new IOException(String.format("Offer index log %s is shorter than its checkpoint", directory.resolve(LOG_FILE)));
+        }
+        log.truncate(checkpointLength);
+        logLength = checkpointLength;
+        offerTable = new MappedHashTable(directory.resolve(OFFER_TABLE_FILE), INITIAL_CAPACITY);
+        transactionTable = new MappedHashTable(directory.resolve(TRANSACTION_TABLE_FILE), INITIAL_CAPACITY);
+        if (offerTable.getTag() != logLength || transactionTable.getTag() != logLength) {
+            rebuildTables();
+        }
+    }
+
+    public int getIndexedHeight() {
+        lock.readLock().lock();
+        try {
+            return indexedHeight;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void index(Integer blockNumber, List<Map<String, Object>> transactions) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (blockNumber <= indexedHeight) {
+                return;
+            }
+            markDirty();
+            for (Map<String, Object> tx : transactions) {
+                Object offerId = tx.get("offer_id");
+                Object txId = tx.get("tx_id");
+                if (offerId == null || txId == null) {
+                    continue;
+                }
+                // Ontology transactions carry no status, being in a block means they went through
+                Boolean status = tx.get("status") == null || Boolean.TRUE.equals(tx.get("status"));
+                Object action = tx.get("action");
+                append(new IndexedTransaction(offerId.toString(), txId.toString(), action == null ? null : action.toString(), status, blockNumber));
+            }
+            indexedHeight = blockNumber;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<IndexedTransaction> findByOfferId(String offerId) throws IOException {
+        lock.readLock().lock();
+        try {
+            List<IndexedTransaction> ret = new ArrayList<>();
+            long offset = offerTable.find(hash(offerId), candidate -> offerId.equals(readRecordQuietly(candidate).transaction.getOfferId()));
+            while (offset >= 0) {
+                Record record = readRecord(offset);
+                ret.add(record.transaction);
+                offset = record.previous;
+            }
+            return ret;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public IndexedTransaction findByTransactionId(String transactionId) throws IOException {
+        lock.readLock().lock();
+        try {
+            long offset = transactionTable.find(hash(transactionId), candidate -> transactionId.equals(readRecordQuietly(candidate).transaction.getTransactionId()));
+            return offset < 0 ? null : readRecord(offset).transaction;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void checkpoint() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!dirty) {
+                return;
+            }
+            log.force(false);
+            offerTable.flush(logLength);
+            transactionTable.flush(logLength);
+            Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+            Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+            ByteBuffer buffer = ByteBuffer.allocate(12);
+            buffer.putInt(indexedHeight).putLong(logLength);
+            Files.write(temp, buffer.array());
+            Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        checkpoint();
+        offerTable.close();
+        transactionTable.close();
+        log.close();
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+        indexedHeight = buffer.getInt();
+        return buffer.getLong();
+    }
+
+    private void markDirty() throws IOException {
+        if (!dirty) {
+            offerTable.setTag(-1);
+            transactionTable.setTag(-1);
+            dirty = true;
+        }
+    }
+
+    private void append(IndexedTransaction transaction) throws IOException {
+        String offerId = transaction.getOfferId();
+        long previous = offerTable.find(hash(offerId), candidate -> offerId.equals(readRecordQuietly(candidate).transaction.getOfferId()));
+        long offset = logLength;
+        ByteBuffer buffer = encode(transaction, previous);
+        while (buffer.hasRemaining()) {
+            logLength += log.write(buffer, logLength);
+        }
+        insert(transaction, offset);
+    }
+
+    private void insert(IndexedTransaction transaction, long offset) throws IOException {
+        String offerId = transaction.getOfferId();
+        String transactionId = transaction.getTransactionId();
+        offerTable.put(hash(offerId), offset, candidate -> offerId.equals(readRecordQuietly(candidate).transaction.getOfferId()));
+        transactionTable.put(hash(transactionId), offset, candidate -> transactionId.equals(readRecordQuietly(candidate).transaction.getTransactionId()));
+    }
+
+    private void rebuildTables() throws IOException {
+        offerTable.close();
+        transactionTable.close();
+        Files.deleteIfExists(directory.resolve(OFFER_TABLE_FILE));
+        Files.deleteIfExists(directory.resolve(TRANSACTION_TABLE_FILE));
+        offerTable = new MappedHashTable(directory.resolve(OFFER_TABLE_FILE), INITIAL_CAPACITY);
+        transactionTable = new MappedHashTable(directory.resolve(TRANSACTION_TABLE_FILE), INITIAL_CAPACITY);
+        long offset = 0;
+        while (offset < logLength) {
+            insert(readRecord(offset).transaction, offset);
+            offset += 4 + readInt(offset);
+        }
+        offerTable.flush(logLength);
+        transactionTable.flush(logLength);
+    }
+
+    private static ByteBuffer encode(IndexedTransaction transaction, long previous) {
+        byte[] offerId = transaction.getOfferId().getBytes(StandardCharsets.UTF_8);
+        byte[] transactionId = transaction.getTransactionId().getBytes(StandardCharsets.UTF_8);
+        byte[] action = transaction.getAction() == null ? new byte[0] : transaction.getAction().getBytes(StandardCharsets.UTF_8);
+        int length = 8 + 4 + 1 + 6 + offerId.length + transactionId.length + action.length;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length).putLong(previous).putInt(transaction.getBlockNumber()).put((byte) (transaction.getStatus() ? 1 : 0));
+        putString(buffer, offerId);
+        putString(buffer, transactionId);
+        putString(buffer, action);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value.length > 0xFFFF) {
+            throw new IllegalArgumentException("Indexed value is too long");
+        }
+        buffer.putShort((short) value.length).put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        String ret = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return ret;
+    }
+
+    private Record readRecord(long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(readInt(offset));
+        readFully(buffer, offset + 4);
+        buffer.flip();
+        Record record = new Record();
+        record.previous = buffer.getLong();
+        int blockNumber = buffer.getInt();
+        boolean status = buffer.get() == 1;
+        String offerId = getString(buffer);
+        String transactionId = getString(buffer);
+        String action = getString(buffer);
+        record.transaction = new IndexedTransaction(offerId, transactionId, action.isEmpty() ? null : action, status, blockNumber);
+        return record;
+    }
+
+    private Record readRecordQuietly(long offset) {
+        try {
+            return readRecord(offset);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int readInt(long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        readFully(buffer, offset);
+        buffer.flip();
+        return buffer.getInt();
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException(String.format("Unexpected end of offer index log at %s", offset));
+            }
+        }
+    }
+
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
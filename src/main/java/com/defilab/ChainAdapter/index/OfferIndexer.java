@@ -0,0 +1,74 @@
+package com.defilab.ChainAdapter.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.defilab.ChainAdapter.ledgers.Ledger;
+import com.defilab.ChainAdapter.ledgers.TransactionFilter;
+
+public class OfferIndexer implements Closeable {
+    private Ledger ledger = null;
+    private OfferIndex offerIndex = null;
+    private int checkpointInterval = 1000;
+    private ScheduledExecutorService scheduler = null;
+    private Logger logger = LogManager.getLogger(OfferIndexer.class);
+
+    public OfferIndexer(Ledger ledger, OfferIndex offerIndex) {
+        this.ledger = ledger;
+        this.offerIndex = offerIndex;
+    }
+
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public synchronized void catchUp() throws Exception {
+        int fromBlock = offerIndex.getIndexedHeight() + 1;
+        int toBlock = ledger.getLatestBlockNumber();
+        if (fromBlock > toBlock) {
+            return;
+        }
+        ledger.scan(fromBlock, toBlock, TransactionFilter.all(), (blockNumber, transactions) -> {
+            offerIndex.index(blockNumber, transactions);
+            if (blockNumber % checkpointInterval == 0) {
+                offerIndex.checkpoint();
+            }
+        });
+        offerIndex.checkpoint();
+    }
+
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "offer-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                catchUp();
+            } catch (Exception e) {
+                logger.error(String.format("Failed to index blocks from %s (%s)", offerIndex.getIndexedHeight() + 1, e.toString()));
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+                scheduler = null;
+            }
+        }
+        offerIndex.checkpoint();
+    }
+}
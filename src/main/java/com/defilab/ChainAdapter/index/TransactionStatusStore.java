@@ -0,0 +1,6 @@
+package com.defilab.ChainAdapter.index;
+
+// Source of already verified transactions that lets verification skip the chain
+public interface TransactionStatusStore {
+    IndexedTransaction findByTransactionId(String transactionId) throws Exception;
+}
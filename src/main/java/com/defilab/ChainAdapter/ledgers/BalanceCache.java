@@ -0,0 +1,77 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Account balances valid at one block height. Repeated reads between blocks are served from memory, the cache
+// is emptied as soon as the chain grows.
+public class BalanceCache {
+    private final ConcurrentHashMap<String, Double> entries = new ConcurrentHashMap<>();
+    private int maxEntries;
+    private volatile int height = -1;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public BalanceCache() {
+        this(100000);
+    }
+
+    public BalanceCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public Double get(String account) {
+        Double balance = entries.get(account);
+        if (balance == null) misses.increment();
+        else hits.increment();
+        return balance;
+    }
+
+    public void put(String account, Double balance, int readHeight) {
+        if (balance == null || entries.size() >= maxEntries && !entries.containsKey(account)) {
+            return;
+        }
+        entries.put(account, balance);
+        // A block may have arrived while the balance was being read, advance publishes the new height before
+        // clearing so one of the two removes it
+        if (readHeight < height) {
+            entries.remove(account);
+        }
+    }
+
+    public void invalidate(String account) {
+        entries.remove(account);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    // Brings the cache up to latestBlock, returns the height cached balances are now valid at. Which accounts a
+    // block touched cannot be told reliably from the decoded transactions (Ontology transfers carry raw byte
+    // addresses, Fabric offers keep theirs inside an unparsed body), so any new block drops every balance.
+    public synchronized int advance(int latestBlock) {
+        if (latestBlock <= height) {
+            return height;
+        }
+        height = latestBlock;
+        entries.clear();
+        return height;
+    }
+}
@@ -0,0 +1,58 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class BatchResult {
+    private List<OfferResult> results;
+    private long elapsedNanos;
+    private long[] sortedLatencies;
+
+    public BatchResult(List<OfferResult> results, long elapsedNanos) {
+        this.results = results;
+        this.elapsedNanos = elapsedNanos;
+        sortedLatencies = new long[results.size()];
+        for (int i = 0; i < sortedLatencies.length; i++) {
+            sortedLatencies[i] = results.get(i).getLatencyNanos();
+        }
+        Arrays.sort(sortedLatencies);
+    }
+
+    public List<OfferResult> getResults() {
+        return results;
+    }
+
+    public int getSuccessCount() {
+        int ret = 0;
+        for (OfferResult result : results) {
+            if (result.isSuccess()) ret++;
+        }
+        return ret;
+    }
+
+    public int getFailureCount() {
+        return results.size() - getSuccessCount();
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : results.size() * 1e9 / elapsedNanos;
+    }
+
+    public long getLatencyPercentileNanos(double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        return sortedLatencies[(int) Math.min(sortedLatencies.length - 1, Math.floor(percentile * sortedLatencies.length))];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s offers (%s failed) in %.1f ms, %.1f offers/s, p50 %.1f ms, p99 %.1f ms",
+                results.size(), getFailureCount(), elapsedNanos / 1e6, getThroughput(),
+                getLatencyPercentileNanos(0.5) / 1e6, getLatencyPercentileNanos(0.99) / 1e6);
+    }
+}
@@ -0,0 +1,8 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.util.List;
+import java.util.Map;
+
+public interface BlockConsumer {
+    void accept(Integer blockNumber, List<Map<String, Object>> transactions) throws Exception;
+}
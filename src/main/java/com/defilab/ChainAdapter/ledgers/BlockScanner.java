@@ -0,0 +1,57 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public class BlockScanner {
+    private Ledger ledger = null;
+    private int window;
+
+    public BlockScanner(Ledger ledger, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        this.ledger = ledger;
+        this.window = window;
+    }
+
+    public void scan(int fromBlock, int toBlock, TransactionFilter filter, BlockConsumer consumer) throws Exception {
+        ArrayDeque<CompletableFuture<List<Map<String, Object>>>> inFlight = new ArrayDeque<>(window);
+        int nextBlock = fromBlock;
+        try {
+            while (nextBlock <= toBlock && inFlight.size() < window) {
+                inFlight.add(fetch(nextBlock++, filter));
+            }
+            for (int blockNumber = fromBlock; !inFlight.isEmpty(); blockNumber++) {
+                List<Map<String, Object>> transactions = await(inFlight.poll());
+                // Only refill the window once the head is taken, so a slow consumer throttles prefetching
+                if (nextBlock <= toBlock) {
+                    inFlight.add(fetch(nextBlock++, filter));
+                }
+                consumer.accept(blockNumber, transactions);
+            }
+        } finally {
+            for (CompletableFuture<List<Map<String, Object>>> pending : inFlight) {
+                pending.cancel(false);
+            }
+        }
+    }
+
+    private CompletableFuture<List<Map<String, Object>>> fetch(int blockNumber, TransactionFilter filter) {
+        return ledger.supplyAsync(() -> ledger.getTransactionsFromBlock(blockNumber, filter));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
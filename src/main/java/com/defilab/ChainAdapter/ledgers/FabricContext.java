@@ -0,0 +1,29 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.HFClient;
+import org.hyperledger.fabric.sdk.User;
+
+public class FabricContext {
+    private HFClient client;
+    private Channel channel;
+    private User user;
+
+    public FabricContext(HFClient client, Channel channel, User user) {
+        this.client = client;
+        this.channel = channel;
+        this.user = user;
+    }
+
+    public HFClient getClient() {
+        return client;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public User getUser() {
+        return user;
+    }
+}
@@ -0,0 +1,38 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.Channel;
+
+public class FabricTransactionWatcher extends TransactionWatcher {
+    private Channel hfChannel = null;
+    private String listenerHandle = null;
+    private Logger logger = LogManager.getLogger(FabricTransactionWatcher.class);
+
+    public FabricTransactionWatcher(Channel hfChannel) {
+        this.hfChannel = hfChannel;
+    }
+
+    @Override
+    protected void start() throws Exception {
+        listenerHandle = hfChannel.registerBlockListener(blockEvent -> {
+            for (BlockEvent.TransactionEvent txEvent : blockEvent.getTransactionEvents()) {
+                notifyCommitted(txEvent.getTransactionID(), txEvent.isValid());
+            }
+        });
+    }
+
+    @Override
+    protected void stop() {
+        if (listenerHandle == null) {
+            return;
+        }
+        try {
+            hfChannel.unregisterBlockListener(listenerHandle);
+        } catch (Exception e) {
+            logger.error(String.format("Failed to unregister block listener (%s)", e.getMessage()));
+        }
+        listenerHandle = null;
+    }
+}
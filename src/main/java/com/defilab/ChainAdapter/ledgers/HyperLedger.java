@@ -1,6 +1,5 @@
 package com.defilab.ChainAdapter.ledgers;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigDecimal;
@@ -12,35 +11,68 @@ import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import org.hyperledger.fabric.sdk.BlockInfo;
+import org.hyperledger.fabric.protos.common.Common;
+import org.hyperledger.fabric.protos.peer.FabricTransaction;
+import org.hyperledger.fabric.sdk.ActionResponse;
+import org.hyperledger.fabric.sdk.BlockEvent;
 import org.hyperledger.fabric.sdk.ChaincodeID;
 import org.hyperledger.fabric.sdk.ChaincodeResponse;
 import org.hyperledger.fabric.sdk.Channel;
 import org.hyperledger.fabric.sdk.Enrollment;
 import org.hyperledger.fabric.sdk.HFClient;
-import org.hyperledger.fabric.sdk.NetworkConfig;
+import org.hyperledger.fabric.sdk.Peer;
 import org.hyperledger.fabric.sdk.ProposalResponse;
 import org.hyperledger.fabric.sdk.PublicEnvelopeDeserializer;
+import org.hyperledger.fabric.sdk.SDKUtils;
 import org.hyperledger.fabric.sdk.TransactionInfo;
 import org.hyperledger.fabric.sdk.TransactionProposalRequest;
 import org.hyperledger.fabric.sdk.TransactionRequest;
 import org.hyperledger.fabric.sdk.User;
-import org.hyperledger.fabric.sdk.security.CryptoSuite;
+import org.hyperledger.fabric.sdk.exception.TransactionEventException;
 
 import com.alibaba.fastjson.JSON;
+import com.defilab.ChainAdapter.codec.OfferCodec;
+import com.defilab.ChainAdapter.codec.OfferView;
+import com.defilab.ChainAdapter.index.IndexedTransaction;
+import com.defilab.ChainAdapter.metrics.LedgerMetrics;
+import com.defilab.ChainAdapter.metrics.LedgerMetricsListener;
 import com.google.protobuf.ByteString;
-
-import static org.hyperledger.fabric.sdk.BlockInfo.EnvelopeType.TRANSACTION_ENVELOPE;
+import com.google.protobuf.CodedInputStream;
 
 
 public class HyperLedger extends Ledger {
+    private static ExecutorService peerExecutor = null;
     private HFClient hfClient = null;
     private Channel hfChannel = null;
+    private User user = null;
     private String chainCodeName = null;
+    private PeerSelector peerSelector = new PeerSelector();
+    private Integer endorsementQuorum = 0;
+    private long proposalWaitTime = 3000;
+    private OrderingQueue<Collection<ProposalResponse>, CompletableFuture<BlockEvent.TransactionEvent>> orderingQueue = null;
+    private String putOffersFunction = null;
+    private String acceptOffersFunction = null;
+    private Integer multiOfferSize = 50;
+    private String accountBalancesFunction = null;
+    private KeyedSerializer offerWriteSerializer = null;
+    private Integer maxConflictRetries = 0;
+    private Long conflictBackoff = 100L;
+    private Integer multiBalanceSize = 200;
     
     public HyperLedger(String account) throws Exception {
         this(account, "pts-exchange");
@@ -54,26 +86,23 @@ public class HyperLedger extends Ledger {
         this(account, channelName, chainCode, "fabric_network.json");
     }
     
-    class SendTransactionThread extends Thread {
-        private Channel hfChannel;
-        private Collection<ProposalResponse> proposalResponses;
-        SendTransactionThread(Channel hfChannel, Collection<ProposalResponse> proposalResponses) {
-            this.hfChannel = hfChannel;
-            this.proposalResponses = proposalResponses;
-        }
-        public void run() {
-            hfChannel.sendTransaction(proposalResponses);
-        }
+    public HyperLedger(String account, String channelName, String chainCode, String fabricNetworkConfigFile) throws Exception {      
+        this(LedgerFactory.getDefault().getFabricContext(account, channelName, fabricNetworkConfigFile), chainCode);
     }
-    
+
+    public HyperLedger(FabricContext context, String chainCode) {
+        hfClient = context.getClient();
+        hfChannel = context.getChannel();
+        user = context.getUser();
+        chainCodeName = chainCode;
+        setOrderingConcurrency(4);
+    }
+
     @SuppressWarnings("unchecked")
-    public HyperLedger(String account, String channelName, String chainCode, String fabricNetworkConfigFile) throws Exception {      
-        Map<String, Object> networkConfig = (Map<String, Object>) JSON.parse(new String(Files.readAllBytes(Paths.get(fabricNetworkConfigFile))));
+    static User createUser(Map<String, Object> networkConfig, String account) throws Exception {
         Map<String, Object> organizations = (Map<String, Object>) networkConfig.get("organizations");
         Map<String, Object> organization = (Map<String, Object>) organizations.get(account.split("@")[1]);
         Map<String, Object> user = (Map<String, Object>) ((Map<String, Object>) organization.get("users")).get(account.split("@")[0]);
-        hfClient = HFClient.createNewInstance();
-        hfClient.setCryptoSuite(CryptoSuite.Factory.getCryptoSuite());
         UserContext userContext = new UserContext();
         userContext.setName(account.split("@")[0]);
         userContext.setAffiliation(account.split("@")[1]);
@@ -82,28 +111,186 @@ public class HyperLedger extends Ledger {
         enrollment.setKey(user.get("private_key").toString());
         userContext.setEnrollment(enrollment);
         userContext.setMspId(organization.get("mspid").toString());
-        hfClient.setUserContext(userContext);
-        hfChannel = hfClient.loadChannelFromConfig(channelName, NetworkConfig.fromJsonFile(new File(fabricNetworkConfigFile)));
-        hfChannel.initialize();
-        chainCodeName = chainCode;
+        return userContext;
     }
 
     @Override
     public String putOffer(Map<String, Object> offer) throws Exception {
-        ArrayList<String> contractArgs = new ArrayList<>();
-        contractArgs.add("PutOffer");
-        contractArgs.add(offer.get("offer_id").toString());
-        contractArgs.add(JSON.toJSONString(offer));
-        return invokeSmartContract("invoke", contractArgs, false);
+        return writeOffer("PutOffer", offer);
     }
 
     @Override
     public String acceptOffer(Map<String, Object> offer) throws Exception {
+        return writeOffer("AcceptOffer", offer);
+    }
+
+    @Override
+    public CompletableFuture<SubmittedTransaction> putOfferAsync(Map<String, Object> offer) {
+        return submitOffer("PutOffer", offer);
+    }
+
+    @Override
+    public CompletableFuture<SubmittedTransaction> acceptOfferAsync(Map<String, Object> offer) {
+        return submitOffer("AcceptOffer", offer);
+    }
+
+    // Writes to the same offer_id wait for the previous one to commit before being endorsed, so they read
+    // its result instead of failing with an MVCC conflict. Writes to different offers stay parallel.
+    public void setSerializeOfferWrites(Boolean serializeOfferWrites) {
+        offerWriteSerializer = serializeOfferWrites ? new KeyedSerializer() : null;
+    }
+
+    // Re-endorses and resubmits writes invalidated by an MVCC read or phantom read conflict, waiting
+    // backoffMillis doubled on every attempt. A write with retries only returns once it is committed,
+    // since a resubmitted write gets a new transaction id.
+    public void setConflictRetries(Integer maxConflictRetries, Long backoffMillis) {
+        this.maxConflictRetries = maxConflictRetries;
+        this.conflictBackoff = backoffMillis;
+    }
+
+    private String writeOffer(String action, Map<String, Object> offer) throws Exception {
+        if (offerWriteSerializer == null && maxConflictRetries <= 0) {
+            return invokeSmartContract("invoke", offerArgs(action, offer), false);
+        }
+        try {
+            return submitOffer(action, offer).get().getTransactionId();
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private CompletableFuture<SubmittedTransaction> submitOffer(String action, Map<String, Object> offer) {
+        KeyedSerializer serializer = offerWriteSerializer;
+        if (serializer == null || !offer.containsKey("offer_id")) {
+            return submitWithRetries(() -> offerArgs(action, offer));
+        }
+        return serializer.submit(offer.get("offer_id").toString(), () -> submitWithRetries(() -> offerArgs(action, offer)), SubmittedTransaction::getCommitFuture);
+    }
+
+    private CompletableFuture<SubmittedTransaction> submitWithRetries(Callable<ArrayList<String>> args) {
+        if (maxConflictRetries <= 0) {
+            return supplyAsync(() -> submitTransaction(sendProposal("invoke", args.call())));
+        }
+        CompletableFuture<SubmittedTransaction> ret = new CompletableFuture<>();
+        submitAttempt(args, 0, ret);
+        return ret;
+    }
+
+    private void submitAttempt(Callable<ArrayList<String>> args, int attempt, CompletableFuture<SubmittedTransaction> ret) {
+        supplyAsync(() -> {
+            Collection<ProposalResponse> responses = sendProposal("invoke", args.call());
+            String txId = checkEndorsements(responses);
+            long commitStartTime = System.nanoTime();
+            // Conflicts themselves are counted in order(), here only the ones left after the last retry
+            order(responses).whenComplete((txEvent, e) -> {
+                if (e != null) {
+                    ret.completeExceptionally(unwrap(e));
+                } else if (txEvent.isValid()) {
+                    ret.complete(new SubmittedTransaction(txId, CompletableFuture.completedFuture(true)));
+                } else if (!isConflict(txEvent)) {
+                    ret.complete(new SubmittedTransaction(txId, CompletableFuture.completedFuture(false)));
+                } else if (attempt >= maxConflictRetries) {
+                    LedgerMetrics.record("fabric.conflict.exhausted", null, System.nanoTime() - commitStartTime, LedgerMetricsListener.Outcome.ERROR);
+                    ret.complete(new SubmittedTransaction(txId, CompletableFuture.completedFuture(false)));
+                } else {
+                    long backoff = conflictBackoff << Math.min(attempt, 10);
+                    backoff += ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                    getScheduler().schedule(() -> submitAttempt(args, attempt + 1, ret), backoff, TimeUnit.MILLISECONDS);
+                }
+            });
+            return txId;
+        }).exceptionally(e -> {
+            ret.completeExceptionally(unwrap(e));
+            return null;
+        });
+    }
+
+    private static boolean isConflict(BlockEvent.TransactionEvent txEvent) {
+        int validationCode = txEvent.getValidationCode();
+        return validationCode == FabricTransaction.TxValidationCode.MVCC_READ_CONFLICT_VALUE
+                || validationCode == FabricTransaction.TxValidationCode.PHANTOM_READ_CONFLICT_VALUE;
+    }
+
+    @Override
+    public BatchResult putOffers(List<Map<String, Object>> offers) throws Exception {
+        return putOffersFunction == null ? super.putOffers(offers) : submitMultiOffers(putOffersFunction, offers);
+    }
+
+    @Override
+    public BatchResult acceptOffers(List<Map<String, Object>> offers) throws Exception {
+        return acceptOffersFunction == null ? super.acceptOffers(offers) : submitMultiOffers(acceptOffersFunction, offers);
+    }
+
+    // Chain code functions taking a JSON array of offers, set them when the deployed chain code has them
+    public void setMultiOfferFunctions(String putOffersFunction, String acceptOffersFunction, Integer multiOfferSize) {
+        this.putOffersFunction = putOffersFunction;
+        this.acceptOffersFunction = acceptOffersFunction;
+        this.multiOfferSize = multiOfferSize;
+    }
+
+    public void setOrderingConcurrency(Integer orderingConcurrency) {
+        orderingQueue = new OrderingQueue<>(responses -> {
+            long startTime = LedgerMetrics.start("fabric.ordering");
+            boolean success = false;
+            try {
+                CompletableFuture<BlockEvent.TransactionEvent> ret = hfChannel.sendTransaction(responses, user);
+                success = true;
+                return ret;
+            } finally {
+                LedgerMetrics.stop("fabric.ordering", null, startTime, success);
+            }
+        }, getPeerExecutor(), orderingConcurrency);
+    }
+
+    private BatchResult submitMultiOffers(String function, List<Map<String, Object>> offers) throws Exception {
+        long startTime = System.nanoTime();
+        OfferResult[] results = new OfferResult[offers.size()];
+        // Offers without an offer_id fail on their own instead of taking their chunk down
+        List<Integer> positions = new ArrayList<>(offers.size());
+        for (int i = 0; i < offers.size(); i++) {
+            if (offers.get(i).get("offer_id") == null) {
+                results[i] = new OfferResult(null, null, new Exception("offer_id is required"), 0);
+            } else {
+                positions.add(i);
+            }
+        }
+        // A chunk is one proposal, so the window counts chunks in flight rather than offers
+        Semaphore window = new Semaphore(getBatchWindow());
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (int i = 0; i < positions.size(); i += multiOfferSize) {
+            List<Integer> chunkPositions = positions.subList(i, Math.min(positions.size(), i + multiOfferSize));
+            List<Map<String, Object>> chunk = new ArrayList<>(chunkPositions.size());
+            for (Integer position : chunkPositions) {
+                chunk.add(offers.get(position));
+            }
+            window.acquire();
+            long chunkStartTime = System.nanoTime();
+            ArrayList<String> args = new ArrayList<>();
+            args.add(function);
+            args.add(JSON.toJSONString(chunk));
+            pending.add(invokeSmartContractAsync("invoke", args).handle((tx, e) -> {
+                window.release();
+                for (Integer position : chunkPositions) {
+                    results[position] = new OfferResult(offers.get(position).get("offer_id").toString(), tx, unwrap(e), System.nanoTime() - chunkStartTime);
+                }
+                return null;
+            }));
+        }
+        for (CompletableFuture<Void> chunkResults : pending) {
+            chunkResults.join();
+        }
+        List<OfferResult> ret = new ArrayList<>(results.length);
+        Collections.addAll(ret, results);
+        return new BatchResult(ret, System.nanoTime() - startTime);
+    }
+
+    private ArrayList<String> offerArgs(String action, Map<String, Object> offer) {
         ArrayList<String> contractArgs = new ArrayList<>();
-        contractArgs.add("AcceptOffer");
+        contractArgs.add(action);
         contractArgs.add(offer.get("offer_id").toString());
         contractArgs.add(JSON.toJSONString(offer));
-        return invokeSmartContract("invoke", contractArgs, false);
+        return contractArgs;
     }
     
     @SuppressWarnings("unchecked")
@@ -115,58 +302,257 @@ public class HyperLedger extends Ledger {
         return Double.parseDouble(((Map<String, Object>)JSON.parse(invokeSmartContract("query", args, true))).get("balance").toString());
     }
     
+    // Chain code query taking a JSON array of accounts and answering {account: balance} or {account: {"balance": ...}}
+    public void setAccountBalancesFunction(String accountBalancesFunction, Integer multiBalanceSize) {
+        this.accountBalancesFunction = accountBalancesFunction;
+        this.multiBalanceSize = multiBalanceSize;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected Map<String, Double> fetchAccountBalances(Collection<String> accounts) throws Exception {
+        if (accountBalancesFunction == null) {
+            return super.fetchAccountBalances(accounts);
+        }
+        List<String> accountList = new ArrayList<>(accounts);
+        List<CompletableFuture<String>> pending = new ArrayList<>();
+        for (int i = 0; i < accountList.size(); i += multiBalanceSize) {
+            ArrayList<String> args = new ArrayList<>();
+            args.add(accountBalancesFunction);
+            args.add(JSON.toJSONString(accountList.subList(i, Math.min(accountList.size(), i + multiBalanceSize))));
+            pending.add(supplyAsync(() -> invokeSmartContract("query", args, true)));
+        }
+        Map<String, Double> ret = new LinkedHashMap<>();
+        for (String account : accountList) {
+            ret.put(account, null);
+        }
+        for (CompletableFuture<String> chunk : pending) {
+            Map<String, Object> balances;
+            try {
+                balances = (Map<String, Object>) JSON.parse(chunk.get());
+            } catch (ExecutionException e) {
+                throw new Exception(String.format("Failed to query account balances (%s)", unwrap(e.getCause()).getMessage()));
+            }
+            for (Map.Entry<String, Object> balance : balances.entrySet()) {
+                Object value = balance.getValue() instanceof Map ? ((Map<String, Object>) balance.getValue()).get("balance") : balance.getValue();
+                if (value != null && ret.containsKey(balance.getKey())) {
+                    ret.put(balance.getKey(), Double.parseDouble(value.toString()));
+                }
+            }
+        }
+        return ret;
+    }
+
+    public PeerSelector getPeerSelector() {
+        return peerSelector;
+    }
+
+    // Number of fastest peers a write is endorsed by, 0 sends proposals to every channel peer
+    public void setEndorsementQuorum(Integer endorsementQuorum) {
+        this.endorsementQuorum = endorsementQuorum;
+    }
+
     public String invokeSmartContract(String func, ArrayList<String> args, Boolean readOonly) throws Exception {
+        if (readOonly) {
+            return queryChaincode(func, args);
+        }
+        return submitTransaction(sendProposal(func, args)).getTransactionId();
+    }
+
+    public CompletableFuture<SubmittedTransaction> invokeSmartContractAsync(String func, ArrayList<String> args) {
+        return supplyAsync(() -> submitTransaction(sendProposal(func, args)));
+    }
+
+    private String queryChaincode(String func, ArrayList<String> args) throws Exception {
+        return hedgedRead("fabric.query.chaincode", peer -> {
+            TransactionProposalRequest request = newProposalRequest(func, args, proposalWaitTime);
+            for (ProposalResponse res: hfChannel.sendTransactionProposal(request, Collections.singleton(peer))) {
+                if (res.getStatus() != ChaincodeResponse.Status.SUCCESS) {
+                    throw new Exception(String.format("Failed to query chain code. (%s)", res.getMessage()));
+                }
+                return new String(res.getChaincodeActionResponsePayload());
+            }
+            return null;
+        });
+    }
+
+    // Peer calls get their own pool, ledger workers block on them and must not wait for their own queue
+    private static synchronized ExecutorService getPeerExecutor() {
+        if (peerExecutor == null) {
+            peerExecutor = newBoundedExecutor(Math.max(8, Runtime.getRuntime().availableProcessors() * 4), 4096);
+        }
+        return peerExecutor;
+    }
+
+    private <T> T hedgedRead(String operation, PeerSelector.PeerCall<T> call) throws Exception {
+        PeerSelector.PeerCall<T> measuredCall = peer -> {
+            long startTime = LedgerMetrics.start(operation);
+            boolean success = false;
+            try {
+                T ret = call.call(peer);
+                success = true;
+                return ret;
+            } finally {
+                LedgerMetrics.stop(operation, peer.getName(), startTime, success);
+            }
+        };
+        try {
+            return peerSelector.hedge(hfChannel.getPeers(), measuredCall, getPeerExecutor(), getScheduler()).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private Collection<ProposalResponse> sendProposal(String func, ArrayList<String> args) throws Exception {
+        Collection<Peer> peers = hfChannel.getPeers();
+        if (endorsementQuorum > 0 && endorsementQuorum < peers.size()) {
+            List<Peer> targets = peerSelector.rank(peers).subList(0, endorsementQuorum);
+            Collection<ProposalResponse> responses = sendProposal(func, args, targets, peerSelector.getProposalWaitTime(targets, proposalWaitTime));
+            if (isEndorsed(responses)) {
+                return responses;
+            }
+        }
+        return sendProposal(func, args, peers, proposalWaitTime);
+    }
+
+    private Collection<ProposalResponse> sendProposal(String func, ArrayList<String> args, Collection<Peer> targets, long waitTime) throws Exception {
+        long startTime = LedgerMetrics.start("fabric.proposal");
+        Collection<ProposalResponse> responses = null;
+        try {
+            responses = hfChannel.sendTransactionProposal(newProposalRequest(func, args, waitTime), targets);
+        } finally {
+            LedgerMetrics.stop("fabric.proposal", null, startTime, responses != null);
+        }
+        // The SDK answers for the whole fan-out at once, so endorsement is one sample without a peer and is not
+        // fed to peerSelector
+        boolean endorsed = true;
+        for (ProposalResponse res: responses) {
+            endorsed &= res.getStatus() == ChaincodeResponse.Status.SUCCESS;
+        }
+        LedgerMetrics.record("fabric.endorsement", null, System.nanoTime() - startTime,
+                endorsed ? LedgerMetricsListener.Outcome.SUCCESS : LedgerMetricsListener.Outcome.ERROR);
+        return responses;
+    }
+
+    private TransactionProposalRequest newProposalRequest(String func, ArrayList<String> args, long waitTime) {
         TransactionProposalRequest request = hfClient.newTransactionProposalRequest();
+        request.setUserContext(user);
         ChaincodeID ccid = ChaincodeID.newBuilder().setName(chainCodeName).build();
         request.setChaincodeID(ccid);
         request.setChaincodeLanguage(TransactionRequest.Type.JAVA);
         request.setFcn(func);
         request.setArgs(args);
-        request.setProposalWaitTime(3000);
-        Collection<ProposalResponse> responses = hfChannel.sendTransactionProposal(request);
-        
-        if (readOonly) {
-            for (ProposalResponse res: responses) {
-                return new String(res.getChaincodeActionResponsePayload());
+        request.setProposalWaitTime(waitTime);
+        return request;
+    }
+
+    private boolean isEndorsed(Collection<ProposalResponse> responses) throws Exception {
+        for (ProposalResponse res: responses) {
+            if (res.getStatus() != ChaincodeResponse.Status.SUCCESS) {
+                return false;
             }
-        } else {
-            String txId = null;
-            for (ProposalResponse res: responses) {
-                if (res.getStatus() != ChaincodeResponse.Status.SUCCESS) {
-                    throw new Exception(String.format("Failed to run chain code. (%s)", res.getMessage()));
-                } else {
-                    txId = res.getTransactionID();
-                }
+        }
+        return !responses.isEmpty() && SDKUtils.getProposalConsistencySets(responses).size() == 1;
+    }
+
+    private SubmittedTransaction submitTransaction(Collection<ProposalResponse> responses) throws Exception {
+        String txId = checkEndorsements(responses);
+        return new SubmittedTransaction(txId, order(responses).thenApply(BlockEvent.TransactionEvent::isValid));
+    }
+
+    private String checkEndorsements(Collection<ProposalResponse> responses) throws Exception {
+        String txId = null;
+        for (ProposalResponse res: responses) {
+            if (res.getStatus() != ChaincodeResponse.Status.SUCCESS) {
+                throw new Exception(String.format("Failed to run chain code. (%s)", res.getMessage()));
+            } else {
+                txId = res.getTransactionID();
             }
-            new SendTransactionThread(hfChannel, responses).start();
-            return txId;
         }
-        return null;
+        if (SDKUtils.getProposalConsistencySets(responses).size() != 1) {
+            throw new Exception("Failed to run chain code. (endorsement responses do not match)");
+        }
+        return txId;
+    }
+
+    // Completes with the commit event, also when the transaction was invalidated. MVCC and phantom read
+    // conflicts are counted as fabric.conflict whether or not conflict retries are enabled. The SDK's event
+    // future may never complete, after the commit timeout it fails so an offer write releases its offer_id.
+    private CompletableFuture<BlockEvent.TransactionEvent> order(Collection<ProposalResponse> responses) {
+        long commitStartTime = LedgerMetrics.start("fabric.commit");
+        CompletableFuture<BlockEvent.TransactionEvent> ret = new CompletableFuture<>();
+        ScheduledFuture<?> timeoutTask = getScheduler().schedule(() -> {
+            if (ret.completeExceptionally(new TimeoutException(String.format("No commit event within %s seconds", getCommitTimeout())))) {
+                LedgerMetrics.stop("fabric.commit", null, commitStartTime, LedgerMetricsListener.Outcome.TIMEOUT);
+            }
+        }, getCommitTimeout(), TimeUnit.SECONDS);
+        orderingQueue.submit(responses)
+                .thenCompose(future -> future)
+                .whenComplete((txEvent, e) -> {
+                    timeoutTask.cancel(false);
+                    if (e != null) {
+                        Throwable cause = unwrap(e);
+                        if (!(cause instanceof TransactionEventException) || ((TransactionEventException) cause).getTransactionEvent() == null) {
+                            if (ret.completeExceptionally(cause)) {
+                                LedgerMetrics.stop("fabric.commit", null, commitStartTime, false);
+                            }
+                            return;
+                        }
+                        txEvent = ((TransactionEventException) cause).getTransactionEvent();
+                    }
+                    if (!ret.complete(txEvent)) {
+                        return;
+                    }
+                    LedgerMetrics.stop("fabric.commit", null, commitStartTime, txEvent.isValid());
+                    if (!txEvent.isValid() && isConflict(txEvent)) {
+                        LedgerMetrics.record("fabric.conflict", null, System.nanoTime() - commitStartTime, LedgerMetricsListener.Outcome.ERROR);
+                    }
+                });
+        return ret;
     }
 
     @Override
     public Map<String, Object> getTransaction(String transactionId) throws Exception {
-        TransactionInfo txInfo = hfChannel.queryTransactionByID(transactionId);
+        return loadTransaction(transactionId, () -> queryTransaction(transactionId));
+    }
+
+    private Map<String, Object> queryTransaction(String transactionId) throws Exception {
+        TransactionInfo txInfo = hedgedRead("fabric.query.transaction", peer -> hfChannel.queryTransactionByID(peer, transactionId, user));
         ByteString txEnvelopePayload = txInfo.getProcessedTransaction().getTransactionEnvelope().getPayload();
-        List<String> responseMessages = PublicEnvelopeDeserializer.parseResponseMessages(txEnvelopePayload);
-        List<String> responsePayloads = PublicEnvelopeDeserializer.parseResponsePayloads(txEnvelopePayload);
+        ActionResponse action = PublicEnvelopeDeserializer.parseActions(txEnvelopePayload).get(0);
         
-        Map<String, Object> offer = parseTransaction(responsePayloads.get(0));
-        offer.put("status", "success".equals(responseMessages.get(0)));
+        Map<String, Object> offer = parseTransaction(action.getPayload());
+        // A committed transaction can still have been invalidated, e.g. by an MVCC read conflict
+        boolean valid = txInfo.getValidationCode() == FabricTransaction.TxValidationCode.VALID;
+        offer.put("status", valid && "success".equals(action.getMessage()));
         return offer;
     }
     
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> parseTransaction(String payloadString) {
-        Map<String, Object> payload = (Map<String, Object>) JSON.parse(payloadString);
-        if (!payload.get("action").toString().equals("TopUp")) {
-            payload.put("offer_body", JSON.parse(payload.get("offer_body").toString()));
+    static Map<String, Object> parseTransaction(ByteString payload) throws IOException {
+        return parseTransaction(OfferCodec.decodeFabricPayload(payload::newInput));
+    }
+
+    static Map<String, Object> parseTransaction(OfferView view) throws IOException {
+        long startTime = LedgerMetrics.start("fabric.parse");
+        boolean success = false;
+        try {
+            Map<String, Object> ret = view.toMap();
+            success = true;
+            return ret;
+        } finally {
+            LedgerMetrics.stop("fabric.parse", null, startTime, success);
         }
-        return payload;
     }
 
     @Override
     public Boolean verifyTransaction(String offerId, String transactionId, String action) throws Exception {
+        IndexedTransaction indexed = lookupIndexed(transactionId);
+        if (indexed != null) {
+            return offerId.equals(indexed.getOfferId()) && indexed.getStatus() && action.equals(indexed.getAction());
+        }
         try {
             Map<String, Object> tx = getTransaction(transactionId);
             return offerId.equals(tx.get("offer_id")) && ((Boolean)tx.get("status")) && action.equals(tx.get("action"));
@@ -175,25 +561,47 @@ public class HyperLedger extends Ledger {
         }
     }
 
+    @Override
+    protected TransactionWatcher createTransactionWatcher() {
+        return new FabricTransactionWatcher(hfChannel);
+    }
+
     @Override
     public Integer getBlockchainHeight() throws Exception {
-        return new BigDecimal(hfChannel.queryBlockchainInfo().getHeight()).intValueExact();
+        return new BigDecimal(hedgedRead("fabric.query.height", peer -> hfChannel.queryBlockchainInfo(peer, user)).getHeight()).intValueExact();
     }
 
     @Override
     public List<Map<String, Object>> getTransactionsFromBlock(Integer blockNumber) throws Exception {
-        BlockInfo block = hfChannel.queryBlockByNumber(blockNumber);
+        return getTransactionsFromBlock(blockNumber, TransactionFilter.all());
+    }
+
+    @Override
+    public List<Map<String, Object>> getTransactionsFromBlock(Integer blockNumber, TransactionFilter filter) throws Exception {
+        if (filter == null) {
+            filter = TransactionFilter.all();
+        }
+        Common.Block block = loadBlock(blockNumber, () -> hedgedRead("fabric.query.block", peer -> hfChannel.queryBlockByNumber(peer, blockNumber, user)).getBlock(),
+                archived -> Common.Block.parseFrom(CodedInputStream.newInstance(archived)), Common.Block::toByteArray);
+        return decodeBlock(block, blockNumber, filter);
+    }
+
+    static List<Map<String, Object>> decodeBlock(Common.Block block, Integer blockNumber, TransactionFilter filter) throws IOException {
         List<Map<String, Object>> transactions = new ArrayList<>();
-        for (BlockInfo.EnvelopeInfo envelopeInfo : block.getEnvelopeInfos()) {
-            if (envelopeInfo.getType() == TRANSACTION_ENVELOPE) {
-                BlockInfo.TransactionEnvelopeInfo transactionEnvelopeInfo = (BlockInfo.TransactionEnvelopeInfo) envelopeInfo;
-                for (BlockInfo.TransactionEnvelopeInfo.TransactionActionInfo actionInfo : transactionEnvelopeInfo.getTransactionActionInfos()) {
-                    String payload = new String(actionInfo.getProposalResponsePayload());
-                    Map<String, Object> offer = parseTransaction(payload);
-                    offer.put("status", "success".equals(new String(actionInfo.getProposalResponseMessageBytes())));
-                    transactions.add(offer);
-                }
+        for (ActionResponse action : PublicEnvelopeDeserializer.parseBlock(block)) {
+            if (!filter.mightMatch(action.getPayloadBuffer())) {
+                continue;
+            }
+            OfferView view = OfferCodec.decodeFabricPayload(action.getPayload()::newInput);
+            if (!filter.isAll() && !filter.matches(view)) {
+                continue;
             }
+            Map<String, Object> offer = parseTransaction(view);
+            offer.put("status", action.isValid() && "success".equals(action.getMessage()));
+            offer.put("validation_code", action.getValidationCode());
+            offer.put("tx_id", action.getTransactionId());
+            offer.put("block_number", blockNumber);
+            transactions.add(offer);
         }
         return transactions;
     }
@@ -203,7 +611,7 @@ public class HyperLedger extends Ledger {
     //*********** For HFClient ***************
     //****************************************
     
-    private class UserEnrollment implements Enrollment {
+    private static class UserEnrollment implements Enrollment {
         private PrivateKey key;
         private String cert;
         
@@ -228,7 +636,7 @@ public class HyperLedger extends Ledger {
 
     }
     
-    private class UserContext implements User, Serializable {
+    private static class UserContext implements User, Serializable {
         
         private static final long serialVersionUID = 1L;
         protected String name;
@@ -0,0 +1,62 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Runs tasks sharing a key one after the other and tasks with different keys in parallel. Each key only keeps
+// the future of its last task, a new task swaps itself in and starts when its predecessor is done, so there is
+// no lock and no queue to drain. A task counts as done when the future returned by its completion is.
+public class KeyedSerializer {
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public <T> CompletableFuture<T> submit(String key, Supplier<CompletableFuture<T>> task, Function<T, CompletableFuture<?>> completion) {
+        CompletableFuture<T> ret = new CompletableFuture<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous = tails.put(key, done);
+        Runnable run = () -> {
+            CompletableFuture<T> started;
+            try {
+                started = task.get();
+            } catch (Throwable e) {
+                started = new CompletableFuture<>();
+                started.completeExceptionally(e);
+            }
+            started.whenComplete((value, e) -> {
+                if (e != null) {
+                    release(key, done);
+                    ret.completeExceptionally(e);
+                    return;
+                }
+                CompletableFuture<?> finished = null;
+                try {
+                    finished = completion.apply(value);
+                } catch (Throwable ignored) {
+                }
+                if (finished == null) {
+                    release(key, done);
+                } else {
+                    finished.whenComplete((result, error) -> release(key, done));
+                }
+                ret.complete(value);
+            });
+        };
+        if (previous == null) {
+            run.run();
+        } else {
+            previous.whenComplete((result, e) -> run.run());
+        }
+        return ret;
+    }
+
+    // Keys with a task running or waiting
+    public int getActiveKeyCount() {
+        return tails.size();
+    }
+
+    private void release(String key, CompletableFuture<Void> done) {
+        tails.remove(key, done);
+        done.complete(null);
+    }
+}
@@ -1,10 +1,55 @@
 package com.defilab.ChainAdapter.ledgers;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.defilab.ChainAdapter.index.BlockArchive;
+import com.defilab.ChainAdapter.index.IndexedTransaction;
+import com.defilab.ChainAdapter.index.OfferIndex;
+import com.defilab.ChainAdapter.index.TransactionStatusStore;
+import com.defilab.ChainAdapter.metrics.LedgerMetrics;
+import com.defilab.ChainAdapter.metrics.LedgerMetricsListener;
 
 public abstract class Ledger {
+    private static final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ledger-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static ExecutorService defaultExecutor = null;
+    private TransactionWatcher transactionWatcher = null;
+    private TransactionCache transactionCache = null;
+    private OfferIndex offerIndex = null;
+    private BalanceCache balanceCache = null;
+    private TransactionStatusStore transactionStatusStore = null;
+    private BlockArchive blockArchive = null;
+    private Executor executor = null;
+    private Integer commitTimeout = 60;
+    private Integer scanWindow = 16;
+    private Integer batchWindow = 64;
+
     abstract public String putOffer(Map<String, Object> offer) throws Exception;
     abstract public String acceptOffer(Map<String, Object> offer) throws Exception;
     abstract public Map<String, Object> getTransaction(String transactionId) throws Exception;
@@ -12,13 +57,450 @@ public abstract class Ledger {
     abstract public Integer getBlockchainHeight() throws Exception;
     abstract public Double getAccountBalance(String accountAddress) throws Exception;
     abstract public List<Map<String, Object>> getTransactionsFromBlock(Integer blockNumber) throws Exception;
-    
-    public Boolean verifyTransaction(String offerId, String transactionId, String action, Integer timeout) throws Exception {
+
+    public TransactionCache getTransactionCache() {
+        return transactionCache;
+    }
+
+    public void setTransactionCache(TransactionCache transactionCache) {
+        this.transactionCache = transactionCache;
+    }
+
+    protected Map<String, Object> loadTransaction(String transactionId, Callable<Map<String, Object>> loader) throws Exception {
+        TransactionCache cache = transactionCache;
+        if (cache == null) {
+            return loader.call();
+        }
+        Map<String, Object> tx = cache.getIfPresent(transactionId);
+        if (tx != null) {
+            return tx;
+        }
+        if (cache.isKnownMissing(transactionId)) {
+            return null;
+        }
+        // Only a null result means not found, a failed call (timeout, connection error) is not cached
+        tx = loader.call();
+        if (tx == null) {
+            cache.putMissing(transactionId);
+        } else {
+            cache.put(transactionId, tx);
+        }
+        return tx;
+    }
+
+    protected void invalidateTransaction(String transactionId) {
+        TransactionCache cache = transactionCache;
+        if (cache != null) {
+            cache.invalidate(transactionId);
+        }
+    }
+
+    protected interface BlockDecoder<T> {
+        T decode(ByteBuffer block) throws Exception;
+    }
+
+    public BlockArchive getBlockArchive() {
+        return blockArchive;
+    }
+
+    // Local copy of raw blocks already fetched, block reads only go to the network for heights it does not hold
+    public void setBlockArchive(BlockArchive blockArchive) {
+        this.blockArchive = blockArchive;
+    }
+
+    protected <T> T loadBlock(Integer blockNumber, Callable<T> fetcher, BlockDecoder<T> decoder, Function<T, byte[]> encoder) throws Exception {
+        BlockArchive archive = blockArchive;
+        if (archive == null) {
+            return fetcher.call();
+        }
+        ByteBuffer archived = archive.get(blockNumber);
+        if (archived != null) {
+            long startTime = LedgerMetrics.start("archive.read");
+            boolean success = false;
+            try {
+                T ret = decoder.decode(archived);
+                success = true;
+                return ret;
+            } finally {
+                LedgerMetrics.stop("archive.read", null, startTime, success);
+            }
+        }
+        T block = fetcher.call();
+        long startTime = LedgerMetrics.start("archive.write");
+        boolean success = false;
+        try {
+            archive.put(blockNumber, encoder.apply(block));
+            success = true;
+        } catch (Exception e) {
+            // The block itself was read fine, it is fetched again next time
+        } finally {
+            LedgerMetrics.stop("archive.write", null, startTime, success);
+        }
+        return block;
+    }
+
+    public Integer getLatestBlockNumber() throws Exception {
+        return getBlockchainHeight() - 1;
+    }
+
+    public OfferIndex getOfferIndex() {
+        return offerIndex;
+    }
+
+    public void setOfferIndex(OfferIndex offerIndex) {
+        this.offerIndex = offerIndex;
+    }
+
+    public List<IndexedTransaction> findByOfferId(String offerId) throws Exception {
+        if (offerIndex == null) {
+            throw new Exception("Offer index is not configured");
+        }
+        return offerIndex.findByOfferId(offerId);
+    }
+
+    public TransactionStatusStore getTransactionStatusStore() {
+        return transactionStatusStore;
+    }
+
+    // Shared store of verified transactions (e.g. one filled by another node), consulted after the offer index
+    public void setTransactionStatusStore(TransactionStatusStore transactionStatusStore) {
+        this.transactionStatusStore = transactionStatusStore;
+    }
+
+    protected IndexedTransaction lookupIndexed(String transactionId) {
+        IndexedTransaction ret = lookupIndexed(offerIndex, transactionId);
+        return ret == null ? lookupIndexed(transactionStatusStore, transactionId) : ret;
+    }
+
+    private static IndexedTransaction lookupIndexed(TransactionStatusStore store, String transactionId) {
+        if (store == null) {
+            return null;
+        }
+        try {
+            return store.findByTransactionId(transactionId);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public List<Map<String, Object>> getTransactionsFromBlock(Integer blockNumber, TransactionFilter filter) throws Exception {
+        List<Map<String, Object>> transactions = getTransactionsFromBlock(blockNumber);
+        if (filter == null || filter.isAll()) {
+            return transactions;
+        }
+        List<Map<String, Object>> ret = new ArrayList<>();
+        for (Map<String, Object> tx : transactions) {
+            if (filter.matches(tx)) {
+                ret.add(tx);
+            }
+        }
+        return ret;
+    }
+
+    public void scan(Integer fromBlock, Integer toBlock, TransactionFilter filter, BlockConsumer consumer) throws Exception {
+        new BlockScanner(this, scanWindow).scan(fromBlock, toBlock, filter, consumer);
+    }
+
+    public void setScanWindow(Integer scanWindow) {
+        this.scanWindow = scanWindow;
+    }
+
+    protected TransactionWatcher createTransactionWatcher() throws Exception {
+        return null;
+    }
+
+    public synchronized TransactionWatcher getTransactionWatcher() throws Exception {
+        if (transactionWatcher == null) {
+            transactionWatcher = createTransactionWatcher();
+        }
+        return transactionWatcher;
+    }
+
+    public synchronized void setTransactionWatcher(TransactionWatcher transactionWatcher) {
+        this.transactionWatcher = transactionWatcher;
+    }
+
+    public static ExecutorService newBoundedExecutor(int threads, int queueSize) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "ledger-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = newBoundedExecutor(Math.max(4, Runtime.getRuntime().availableProcessors() * 2), 4096);
+        }
+        return defaultExecutor;
+    }
+
+    public synchronized Executor getExecutor() {
+        return executor == null ? getDefaultExecutor() : executor;
+    }
+
+    public synchronized void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    protected ScheduledExecutorService getScheduler() {
+        return timeoutScheduler;
+    }
+
+    public Integer getCommitTimeout() {
+        return commitTimeout;
+    }
+
+    public void setCommitTimeout(Integer commitTimeout) {
+        this.commitTimeout = commitTimeout;
+    }
+
+    protected <T> CompletableFuture<T> supplyAsync(Callable<T> task) {
+        return supplyAsync(task, getExecutor());
+    }
+
+    protected static <T> CompletableFuture<T> supplyAsync(Callable<T> task, Executor executor) {
+        CompletableFuture<T> ret = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    ret.complete(task.call());
+                } catch (Throwable e) {
+                    ret.completeExceptionally(e);
+                }
+            });
+        } catch (Throwable e) {
+            ret.completeExceptionally(e);
+        }
+        return ret;
+    }
+
+    public CompletableFuture<SubmittedTransaction> putOfferAsync(Map<String, Object> offer) {
+        return supplyAsync(() -> putOffer(offer)).thenApply(txId -> new SubmittedTransaction(txId, awaitCommit(txId)));
+    }
+
+    public CompletableFuture<SubmittedTransaction> acceptOfferAsync(Map<String, Object> offer) {
+        return supplyAsync(() -> acceptOffer(offer)).thenApply(txId -> new SubmittedTransaction(txId, awaitCommit(txId)));
+    }
+
+    public BatchResult putOffers(List<Map<String, Object>> offers) throws Exception {
+        return submitBatch(offers, this::putOfferAsync);
+    }
+
+    public BatchResult acceptOffers(List<Map<String, Object>> offers) throws Exception {
+        return submitBatch(offers, this::acceptOfferAsync);
+    }
+
+    public void setBatchWindow(Integer batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+    protected Integer getBatchWindow() {
+        return batchWindow;
+    }
+
+    // Keeps at most batchWindow offers between submission and endorsement at a time
+    protected BatchResult submitBatch(List<Map<String, Object>> offers, Function<Map<String, Object>, CompletableFuture<SubmittedTransaction>> submit) throws InterruptedException {
+        Semaphore window = new Semaphore(batchWindow);
+        long startTime = System.nanoTime();
+        List<CompletableFuture<OfferResult>> pending = new ArrayList<>(offers.size());
+        for (Map<String, Object> offer : offers) {
+            window.acquire();
+            long offerStartTime = System.nanoTime();
+            String offerId = offer.get("offer_id") == null ? null : offer.get("offer_id").toString();
+            CompletableFuture<SubmittedTransaction> submitted;
+            try {
+                submitted = submit.apply(offer);
+            } catch (Throwable e) {
+                submitted = new CompletableFuture<>();
+                submitted.completeExceptionally(e);
+            }
+            pending.add(submitted.handle((tx, e) -> {
+                window.release();
+                return new OfferResult(offerId, tx, unwrap(e), System.nanoTime() - offerStartTime);
+            }));
+        }
+        List<OfferResult> results = new ArrayList<>(pending.size());
+        for (CompletableFuture<OfferResult> result : pending) {
+            results.add(result.join());
+        }
+        return new BatchResult(results, System.nanoTime() - startTime);
+    }
+
+    protected static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    public CompletableFuture<Map<String, Object>> getTransactionAsync(String transactionId) {
+        return supplyAsync(() -> getTransaction(transactionId));
+    }
+
+    public CompletableFuture<Double> getAccountBalanceAsync(String accountAddress) {
+        return supplyAsync(() -> getAccountBalance(accountAddress));
+    }
+
+    public BalanceCache getBalanceCache() {
+        return balanceCache;
+    }
+
+    public void setBalanceCache(BalanceCache balanceCache) {
+        this.balanceCache = balanceCache;
+    }
+
+    // Balances of all accounts, null for the ones that could not be read. With a balance cache accounts already
+    // read at the current height are not queried again.
+    public Map<String, Double> getAccountBalances(Collection<String> accounts) throws Exception {
+        BalanceCache cache = balanceCache;
+        if (cache == null) {
+            return fetchAccountBalances(new LinkedHashSet<>(accounts));
+        }
+        int readHeight = cache.advance(getLatestBlockNumber());
+        Map<String, Double> ret = new LinkedHashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String account : accounts) {
+            Double balance = cache.get(account);
+            if (balance == null) {
+                missing.add(account);
+            }
+            ret.put(account, balance);
+        }
+        if (!missing.isEmpty()) {
+            for (Map.Entry<String, Double> balance : fetchAccountBalances(missing).entrySet()) {
+                ret.put(balance.getKey(), balance.getValue());
+                cache.put(balance.getKey(), balance.getValue(), readHeight);
+            }
+        }
+        return ret;
+    }
+
+    protected Map<String, Double> fetchAccountBalances(Collection<String> accounts) throws Exception {
+        Map<String, CompletableFuture<Double>> pending = new LinkedHashMap<>();
+        for (String account : accounts) {
+            pending.put(account, getAccountBalanceAsync(account));
+        }
+        Map<String, Double> ret = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<Double>> balance : pending.entrySet()) {
+            try {
+                ret.put(balance.getKey(), balance.getValue().get());
+            } catch (ExecutionException e) {
+                ret.put(balance.getKey(), null);
+            }
+        }
+        return ret;
+    }
+
+    protected CompletableFuture<Boolean> awaitCommit(String transactionId) {
+        CompletableFuture<Boolean> ret = new CompletableFuture<>();
+        if (transactionId == null) {
+            ret.complete(false);
+            return ret;
+        }
+        try {
+            TransactionWatcher watcher = getTransactionWatcher();
+            if (watcher == null) {
+                return supplyAsync(() -> pollTransaction(transactionId, commitTimeout));
+            }
+            CompletableFuture<Boolean> committed = watcher.watch(transactionId);
+            ScheduledFuture<?> timeoutTask = timeoutScheduler.schedule(() -> {
+                getExecutor().execute(() -> {
+                    invalidateTransaction(transactionId);
+                    ret.complete(isCommitted(transactionId));
+                });
+            }, commitTimeout, TimeUnit.SECONDS);
+            ret.whenComplete((result, e) -> {
+                timeoutTask.cancel(false);
+                watcher.unwatch(transactionId, committed);
+            });
+            committed.whenComplete((valid, e) -> {
+                if (e != null) ret.completeExceptionally(e);
+                else ret.complete(valid);
+            });
+        } catch (Exception e) {
+            ret.completeExceptionally(e);
+        }
+        return ret;
+    }
+
+    private Boolean pollTransaction(String transactionId, Integer timeout) throws InterruptedException {
         long startTime = System.currentTimeMillis();
-        while (!verifyTransaction(offerId, transactionId, action)) {
+        while (!isCommitted(transactionId)) {
             if (System.currentTimeMillis() - startTime > timeout * 1000) return false;
             else TimeUnit.MILLISECONDS.sleep(500);
         }
         return true;
     }
+
+    private boolean isCommitted(String transactionId) {
+        try {
+            return getTransaction(transactionId) != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public Boolean verifyTransaction(String offerId, String transactionId, String action, Integer timeout) throws Exception {
+        return verifyTransactionAsync(offerId, transactionId, action, timeout).get();
+    }
+
+    public CompletableFuture<Boolean> verifyTransactionAsync(String offerId, String transactionId, String action, Integer timeout) throws Exception {
+        TransactionWatcher watcher = getTransactionWatcher();
+        if (watcher == null) {
+            return supplyAsync(() -> pollTransaction(offerId, transactionId, action, timeout));
+        }
+
+        long startTime = LedgerMetrics.start("ledger.verify");
+        AtomicBoolean timedOut = new AtomicBoolean(false);
+        CompletableFuture<Boolean> verified = new CompletableFuture<>();
+        CompletableFuture<Boolean> committed = watcher.watch(transactionId);
+        ScheduledFuture<?> timeoutTask = timeoutScheduler.schedule(() -> {
+            timedOut.set(true);
+            verified.complete(false);
+        }, timeout, TimeUnit.SECONDS);
+        verified.whenComplete((result, e) -> {
+            timeoutTask.cancel(false);
+            watcher.unwatch(transactionId, committed);
+            LedgerMetrics.stop("ledger.verify", null, startTime, timedOut.get() ? LedgerMetricsListener.Outcome.TIMEOUT
+                    : Boolean.TRUE.equals(result) ? LedgerMetricsListener.Outcome.SUCCESS : LedgerMetricsListener.Outcome.ERROR);
+        });
+
+        // The transaction may already be in a block the watcher will never see again, once it can be read
+        // the answer is final so a committed but invalid transaction does not wait for the timeout
+        getExecutor().execute(() -> {
+            if (verifyQuietly(offerId, transactionId, action)) {
+                verified.complete(true);
+            } else if (isCommitted(transactionId)) {
+                verified.complete(false);
+            }
+        });
+        committed.whenCompleteAsync((valid, e) -> {
+            invalidateTransaction(transactionId);
+            verified.complete(e == null && valid && verifyQuietly(offerId, transactionId, action));
+        }, getExecutor());
+        return verified;
+    }
+
+    private Boolean pollTransaction(String offerId, String transactionId, String action, Integer timeout) {
+        long startTime = System.currentTimeMillis();
+        try {
+            while (!verifyQuietly(offerId, transactionId, action)) {
+                if (System.currentTimeMillis() - startTime > timeout * 1000) return false;
+                else TimeUnit.MILLISECONDS.sleep(500);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean verifyQuietly(String offerId, String transactionId, String action) {
+        try {
+            return Boolean.TRUE.equals(verifyTransaction(offerId, transactionId, action));
+        } catch (Exception e) {
+            return false;
+        }
+    }
 }
@@ -0,0 +1,145 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.HFClient;
+import org.hyperledger.fabric.sdk.NetworkConfig;
+import org.hyperledger.fabric.sdk.User;
+import org.hyperledger.fabric.sdk.security.CryptoSuite;
+
+import com.alibaba.fastjson.JSON;
+import com.github.ontio.network.connect.ConnectMgr;
+
+// Shares parsed network configs, enrolled users, initialized channels and Ontology connections
+// between ledgers. Everything is loaded once per key, concurrently for different keys.
+public class LedgerFactory {
+    private static LedgerFactory defaultFactory = null;
+    private final ConcurrentHashMap<String, CompletableFuture<FabricNetwork>> fabricNetworks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<User>> fabricUsers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Channel>> fabricChannels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConnectMgr> ontologyConnections = new ConcurrentHashMap<>();
+    private Executor executor = null;
+
+    private static class FabricNetwork {
+        private Map<String, Object> rawConfig;
+        private NetworkConfig networkConfig;
+        private HFClient client;
+    }
+
+    public LedgerFactory() {
+        this(Ledger.newBoundedExecutor(Math.max(4, Runtime.getRuntime().availableProcessors()), 1024));
+    }
+
+    public LedgerFactory(Executor executor) {
+        this.executor = executor;
+    }
+
+    public static synchronized LedgerFactory getDefault() {
+        if (defaultFactory == null) {
+            defaultFactory = new LedgerFactory();
+        }
+        return defaultFactory;
+    }
+
+    public HyperLedger createHyperLedger(String account, String channelName, String chainCode, String fabricNetworkConfigFile) throws Exception {
+        return new HyperLedger(getFabricContext(account, channelName, fabricNetworkConfigFile), chainCode);
+    }
+
+    public CompletableFuture<HyperLedger> createHyperLedgerAsync(String account, String channelName, String chainCode, String fabricNetworkConfigFile) {
+        return getFabricContextAsync(account, channelName, fabricNetworkConfigFile).thenApply(context -> new HyperLedger(context, chainCode));
+    }
+
+    public OntologyLedger createOntologyLedger(String accountPrivateKey, String chainEndpoint, String smartContractAddress) throws Exception {
+        return new OntologyLedger(accountPrivateKey, getOntologyConnection(chainEndpoint), chainEndpoint, smartContractAddress);
+    }
+
+    public FabricContext getFabricContext(String account, String channelName, String fabricNetworkConfigFile) throws Exception {
+        try {
+            return getFabricContextAsync(account, channelName, fabricNetworkConfigFile).get();
+        } catch (ExecutionException e) {
+            Throwable cause = Ledger.unwrap(e.getCause());
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<FabricContext> getFabricContextAsync(String account, String channelName, String fabricNetworkConfigFile) {
+        Path configPath = Paths.get(fabricNetworkConfigFile).toAbsolutePath().normalize();
+        String configKey = configPath.toString();
+        CompletableFuture<FabricNetwork> network = load(fabricNetworks, configKey, () -> loadNetwork(configPath));
+        CompletableFuture<User> user = network.thenCompose(loaded -> load(fabricUsers, configKey + "|" + account, () -> HyperLedger.createUser(loaded.rawConfig, account)));
+        CompletableFuture<Channel> channel = user.thenCompose(loaded -> load(fabricChannels, configKey + "|" + channelName, () -> initializeChannel(network.join(), loaded, channelName)));
+        return channel.thenCombine(user, (loadedChannel, loadedUser) -> new FabricContext(network.join().client, loadedChannel, loadedUser));
+    }
+
+    // One connection per endpoint instead of the process wide OntSdk RPC setting
+    public ConnectMgr getOntologyConnection(String chainEndpoint) {
+        return ontologyConnections.computeIfAbsent(chainEndpoint, endpoint -> new ConnectMgr("http://" + endpoint + ":20336", "rpc"));
+    }
+
+    // Endpoint a connection was created for, null when it did not come from this factory
+    public String getOntologyEndpoint(ConnectMgr connection) {
+        for (Map.Entry<String, ConnectMgr> entry : ontologyConnections.entrySet()) {
+            if (entry.getValue() == connection) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private FabricNetwork loadNetwork(Path configPath) throws Exception {
+        byte[] config = Files.readAllBytes(configPath);
+        FabricNetwork network = new FabricNetwork();
+        network.rawConfig = (Map<String, Object>) JSON.parse(new String(config));
+        network.networkConfig = NetworkConfig.fromJsonStream(new ByteArrayInputStream(config));
+        network.client = HFClient.createNewInstance();
+        network.client.setCryptoSuite(CryptoSuite.Factory.getCryptoSuite());
+        return network;
+    }
+
+    private Channel initializeChannel(FabricNetwork network, User user, String channelName) throws Exception {
+        Channel channel;
+        synchronized (network.client) {
+            if (network.client.getUserContext() == null) {
+                network.client.setUserContext(user);
+            }
+            channel = network.client.loadChannelFromConfig(channelName, network.networkConfig);
+        }
+        channel.initialize();
+        return channel;
+    }
+
+    private <T> CompletableFuture<T> load(ConcurrentHashMap<String, CompletableFuture<T>> cache, String key, Callable<T> loader) {
+        CompletableFuture<T> ret = cache.computeIfAbsent(key, k -> {
+            CompletableFuture<T> loading = new CompletableFuture<>();
+            executor.execute(() -> {
+                try {
+                    loading.complete(loader.call());
+                } catch (Throwable e) {
+                    loading.completeExceptionally(e);
+                }
+            });
+            return loading;
+        });
+        // Failed loads are not kept so the next caller retries
+        ret.whenComplete((value, e) -> {
+            if (e != null) {
+                cache.remove(key, ret);
+            }
+        });
+        return ret;
+    }
+}
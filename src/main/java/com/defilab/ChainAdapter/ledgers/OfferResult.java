@@ -0,0 +1,39 @@
+package com.defilab.ChainAdapter.ledgers;
+
+public class OfferResult {
+    private String offerId;
+    private SubmittedTransaction transaction;
+    private Throwable error;
+    private long latencyNanos;
+
+    public OfferResult(String offerId, SubmittedTransaction transaction, Throwable error, long latencyNanos) {
+        this.offerId = offerId;
+        this.transaction = transaction;
+        this.error = error;
+        this.latencyNanos = latencyNanos;
+    }
+
+    public String getOfferId() {
+        return offerId;
+    }
+
+    public boolean isSuccess() {
+        return error == null && transaction != null && transaction.getTransactionId() != null;
+    }
+
+    public String getTransactionId() {
+        return transaction == null ? null : transaction.getTransactionId();
+    }
+
+    public SubmittedTransaction getTransaction() {
+        return transaction;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+}
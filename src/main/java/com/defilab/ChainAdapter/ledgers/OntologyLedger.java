@@ -1,15 +1,25 @@
 package com.defilab.ChainAdapter.ledgers;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.alibaba.fastjson.JSON;
+import com.defilab.ChainAdapter.codec.OfferCodec;
+import com.defilab.ChainAdapter.codec.OfferView;
+import com.defilab.ChainAdapter.index.IndexedTransaction;
+import com.defilab.ChainAdapter.metrics.LedgerMetrics;
 import com.github.ontio.OntSdk;
 import com.github.ontio.account.Account;
 import com.github.ontio.common.Helper;
@@ -18,18 +28,23 @@ import com.github.ontio.core.payload.InvokeCode;
 import com.github.ontio.core.transaction.Transaction;
 import com.github.ontio.core.transaction.TransactionType;
 import com.github.ontio.crypto.SignatureScheme;
+import com.github.ontio.io.Serializable;
+import com.github.ontio.network.connect.ConnectMgr;
 import com.github.ontio.smartcontract.neovm.abi.AbiFunction;
+import com.github.ontio.smartcontract.neovm.abi.BuildParams;
 import com.github.ontio.smartcontract.neovm.abi.Parameter;
 
 
 public class OntologyLedger extends Ledger {
     private Account account;
     private OntSdk ontSdk = OntSdk.getInstance();
-    private String ontChainEndpoint = null;
-    private String ontRpcEndpoint = null;
-    private String ontRestfulEndpoint = null;
+    private ConnectMgr ontRpc = null;
+    private String ontEndpoint = null;
     private String smartContractAddress = null;
-    private final String OFFER_BODY_CODE = "-----OFFERBODY-----";
+    private String balanceFunction = "BalanceOf";
+    private static ExecutorService signingExecutor = null;
+    private static ExecutorService sendExecutor = null;
+    private OrderingQueue<Transaction, String> sendQueue = null;
     private Logger logger = LogManager.getLogger(OntologyLedger.class);
     
     public OntologyLedger(String accountPrivateKey) throws Exception {
@@ -41,30 +56,97 @@ public class OntologyLedger extends Ledger {
     }
     
     public OntologyLedger(String accountPrivateKey, String chainEndpoint, String smartContractAddress) throws Exception {
-        ontChainEndpoint = chainEndpoint;
-        ontRpcEndpoint = "http://" + ontChainEndpoint + ":20336";
-        ontRestfulEndpoint = "http://" + ontChainEndpoint + ":20334";
-        ontSdk.setRpc(ontRpcEndpoint);
-        ontSdk.setRestful(ontRestfulEndpoint);
-
+        this(accountPrivateKey, LedgerFactory.getDefault().getOntologyConnection(chainEndpoint), chainEndpoint, smartContractAddress);
+    }
+    
+    // The endpoint is only known when the connection came from the default factory
+    public OntologyLedger(String accountPrivateKey, ConnectMgr ontRpc, String smartContractAddress) throws Exception {
+        this(accountPrivateKey, ontRpc, LedgerFactory.getDefault().getOntologyEndpoint(ontRpc), smartContractAddress);
+    }
+    
+    public OntologyLedger(String accountPrivateKey, ConnectMgr ontRpc, String chainEndpoint, String smartContractAddress) throws Exception {
+        this.ontRpc = ontRpc;
+        this.ontEndpoint = chainEndpoint;
         this.smartContractAddress = smartContractAddress;
         
         account = new Account(Helper.hexToBytes(accountPrivateKey), SignatureScheme.SHA256WITHECDSA);
+        setSendConcurrency(8);
     }
 
     @Override
     public String putOffer(Map<String, Object> offer) throws Exception {
+        return send(sign(buildInvoke("PutOffer", putOfferParams(offer))));
+    }
+
+    @Override
+    public String acceptOffer(Map<String, Object> offer) throws Exception {
+        return send(sign(buildInvoke("AcceptOffer", acceptOfferParams(offer))));
+    }
+
+    // Build on the caller, sign on a pool sized to the cores, then send through the send queue. Batches go
+    // through here as well, each offer gets its own result and a failed one does not hold up the others.
+    @Override
+    public CompletableFuture<SubmittedTransaction> putOfferAsync(Map<String, Object> offer) {
+        return submitPipelined(() -> buildInvoke("PutOffer", putOfferParams(offer)));
+    }
+
+    @Override
+    public CompletableFuture<SubmittedTransaction> acceptOfferAsync(Map<String, Object> offer) {
+        return submitPipelined(() -> buildInvoke("AcceptOffer", acceptOfferParams(offer)));
+    }
+
+    private CompletableFuture<SubmittedTransaction> submitPipelined(Callable<Transaction> build) {
+        Transaction tx;
+        try {
+            tx = build.call();
+        } catch (Throwable e) {
+            CompletableFuture<SubmittedTransaction> ret = new CompletableFuture<>();
+            ret.completeExceptionally(e);
+            return ret;
+        }
+        return supplyAsync(() -> sign(tx), getSigningExecutor())
+                .thenCompose(sendQueue::submit)
+                .thenApply(txId -> new SubmittedTransaction(txId, awaitCommit(txId)));
+    }
+
+    // Number of raw transaction sends in flight, each sender reuses its keep-alive connection back to back
+    public void setSendConcurrency(Integer sendConcurrency) {
+        sendQueue = new OrderingQueue<>(tx -> {
+            try {
+                return send(tx);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, getSendExecutor(), sendConcurrency);
+    }
+
+    private static synchronized ExecutorService getSigningExecutor() {
+        if (signingExecutor == null) {
+            signingExecutor = newBoundedExecutor(Runtime.getRuntime().availableProcessors(), 4096);
+        }
+        return signingExecutor;
+    }
+
+    private static synchronized ExecutorService getSendExecutor() {
+        if (sendExecutor == null) {
+            sendExecutor = newBoundedExecutor(Math.max(8, Runtime.getRuntime().availableProcessors() * 4), 4096);
+        }
+        return sendExecutor;
+    }
+
+    private Map<String, Object> putOfferParams(Map<String, Object> offer) throws Exception {
         if (!offer.containsKey("offer_id")) {
             throw new Exception("offer_id is required");
         }
         Map<String, Object> smartContractParams = new HashMap<String, Object>();
         smartContractParams.put("offer_id", offer.get("offer_id"));
-        smartContractParams.put("offer_body", OFFER_BODY_CODE + new String(Base64.getEncoder().encode(JSON.toJSONString(offer).getBytes())) + OFFER_BODY_CODE);
-        return invokeSmartContract("PutOffer", smartContractParams);
+        smartContractParams.put("offer_body", OfferCodec.encodeOntologyBody(JSON.toJSONString(offer)));
+        return smartContractParams;
     }
 
-    @Override
-    public String acceptOffer(Map<String, Object> offer) throws Exception {
+    private Map<String, Object> acceptOfferParams(Map<String, Object> offer) throws Exception {
         if (!offer.containsKey("offer_id")) {
             throw new Exception("offer_id is required");
         } else if (!offer.containsKey("postman_receipt")) {
@@ -72,18 +154,22 @@ public class OntologyLedger extends Ledger {
         }
         Map<String, Object> smartContractParams = new HashMap<String, Object>();
         smartContractParams.put("offer_id", offer.get("offer_id"));
-        smartContractParams.put("offer_body", OFFER_BODY_CODE + new String(Base64.getEncoder().encode(JSON.toJSONString(offer).getBytes())) + OFFER_BODY_CODE);
+        smartContractParams.put("offer_body", OfferCodec.encodeOntologyBody(JSON.toJSONString(offer)));
         smartContractParams.put("postman_receipt", offer.get("postman_receipt"));
-        return invokeSmartContract("AcceptOffer", smartContractParams);
+        return smartContractParams;
     }
 
     @Override
     public Map<String, Object> getTransaction(String transactionId) throws Exception {
-        return parseTransaction(ontSdk.getRpc().getTransaction(transactionId));
+        return loadTransaction(transactionId, () -> parseTransaction(rpcCall("ontology.query.transaction", () -> ontRpc.getTransaction(transactionId))));
     }
 
     @Override
     public Boolean verifyTransaction(String offerId, String transactionId, String action) {
+        IndexedTransaction indexed = lookupIndexed(transactionId);
+        if (indexed != null) {
+            return offerId.equals(indexed.getOfferId());
+        }
         try {
             Map<String, Object> tx = getTransaction(transactionId);
             if (tx == null || !tx.get("offer_id").toString().equals(offerId)) {
@@ -96,21 +182,47 @@ public class OntologyLedger extends Ledger {
         return true;
     }
 
+    @Override
+    protected TransactionWatcher createTransactionWatcher() {
+        return new OntologyTransactionWatcher(ontRpc);
+    }
+
     @Override
     public Integer getBlockchainHeight() throws Exception {
-        return ontSdk.getRpc().getBlockHeight();
+        return rpcCall("ontology.query.height", () -> ontRpc.getBlockHeight());
+    }
+
+    @Override
+    public Integer getLatestBlockNumber() throws Exception {
+        return getBlockchainHeight();
     }
 
     @Override
     public List<Map<String, Object>> getTransactionsFromBlock(Integer blockNumber) throws Exception {
+        return getTransactionsFromBlock(blockNumber, TransactionFilter.all());
+    }
+
+    @Override
+    public List<Map<String, Object>> getTransactionsFromBlock(Integer blockNumber, TransactionFilter filter) throws Exception {
+        if (filter == null) {
+            filter = TransactionFilter.all();
+        }
         List<Map<String, Object>> transactions = new ArrayList<Map<String, Object>>();
-        Block block = ontSdk.getRpc().getBlock(blockNumber);
+        Block block = loadBlock(blockNumber, () -> rpcCall("ontology.query.block", () -> ontRpc.getBlock(blockNumber)),
+                OntologyLedger::decodeArchivedBlock, Block::toArray);
         for (Transaction rawTx : block.transactions) {
+            if (rawTx.txType != TransactionType.InvokeCode || !filter.mightMatch(((InvokeCode) rawTx).code)) {
+                continue;
+            }
             try {
-                Map<String, Object> tx = parseTransaction(rawTx);
-                if (tx != null) {
-                    transactions.add(tx);
+                OfferView view = OfferCodec.decodeOntologyCode(((InvokeCode) rawTx).code);
+                if (view == null || (!filter.isAll() && !filter.matches(view))) {
+                    continue;
                 }
+                Map<String, Object> tx = parseOffer(view);
+                tx.put("tx_id", rawTx.hash().toHexString());
+                tx.put("block_number", blockNumber);
+                transactions.add(tx);
             } catch (Exception e) {
                 logger.debug(String.format("Failed to parse transactions in block %s (%s)", blockNumber, e.toString()));
             }
@@ -118,36 +230,96 @@ public class OntologyLedger extends Ledger {
         return transactions;
     }
     
-    private String invokeSmartContract(String functionName, Map<String, Object> params) {
+    private Transaction buildInvoke(String functionName, Map<String, Object> params) throws Exception {
         Parameter scParameter = new Parameter();
         scParameter.type = "Map";
         AbiFunction func = new AbiFunction(functionName, scParameter);
         func.name = functionName;
-        String transactionId;
+        func.setParamsValue(params);
+        return ontSdk.vm().makeInvokeCodeTransaction(Helper.reverse(smartContractAddress), null, BuildParams.serializeAbiFunction(func), account.getAddressU160().toBase58(), 30000, 0);
+    }
+
+    private Transaction sign(Transaction tx) throws Exception {
+        long startTime = LedgerMetrics.start("ontology.sign");
+        boolean success = false;
         try {
-            func.setParamsValue(params);
-            //transactionId = ontSdk.neovm().sendTransaction(Helper.reverse(smartContractAddress), account, account, 20000, 500, func, false).toString();
-            transactionId = ontSdk.neovm().sendTransaction(Helper.reverse(smartContractAddress), account, account, 30000, 0, func, false).toString();
-        } catch (Exception e) {
-                e.printStackTrace();
-                return null;
+            ontSdk.signTx(tx, new Account[][]{{account}});
+            success = true;
+            return tx;
+        } finally {
+            LedgerMetrics.stop("ontology.sign", null, startTime, success);
+        }
+    }
+
+    // Same as ontSdk.neovm().sendTransaction, but sent through this ledger's own connection
+    private String send(Transaction tx) throws Exception {
+        String transactionId = tx.hash().toHexString();
+        if (!rpcCall("ontology.send", () -> ontRpc.sendRawTransaction(tx.toHexString()))) {
+            throw new Exception(String.format("Transaction %s was rejected by the node", transactionId));
         }
         return transactionId;
     }
 
-    private Map<String, Object> parseTransaction(Transaction rawTx) {
+    // The SDK only deserializes from an array, the archived bytes are copied once here
+    private static Block decodeArchivedBlock(ByteBuffer archived) throws Exception {
+        byte[] bytes = new byte[archived.remaining()];
+        archived.get(bytes);
+        return Serializable.from(bytes, Block.class);
+    }
+
+    static Map<String, Object> parseTransaction(Transaction rawTx) throws IOException {
         if (rawTx.txType != TransactionType.InvokeCode) {
             return null;
         }
-        InvokeCode invokeTx = (InvokeCode)rawTx;
-        String codeString = new String(invokeTx.code);
-        String offerB64String = codeString.split(OFFER_BODY_CODE)[1];
-        Map<String, Object> offer = JSON.parseObject(new String(Base64.getDecoder().decode(offerB64String)));
-        return offer;
+        OfferView view = OfferCodec.decodeOntologyCode(((InvokeCode) rawTx).code);
+        return view == null ? null : parseOffer(view);
+    }
+
+    static Map<String, Object> parseOffer(OfferView view) throws IOException {
+        long startTime = LedgerMetrics.start("ontology.parse");
+        boolean success = false;
+        try {
+            Map<String, Object> ret = view.toMap();
+            success = true;
+            return ret;
+        } finally {
+            LedgerMetrics.stop("ontology.parse", null, startTime, success);
+        }
     }
 
+    private <T> T rpcCall(String operation, Callable<T> call) throws Exception {
+        long startTime = LedgerMetrics.start(operation);
+        boolean success = false;
+        try {
+            T ret = call.call();
+            success = true;
+            return ret;
+        } finally {
+            LedgerMetrics.stop(operation, ontEndpoint, startTime, success);
+        }
+    }
+
+    // Name of the contract's read-only balance function, taking the account as its only argument
+    public void setBalanceFunction(String balanceFunction) {
+        this.balanceFunction = balanceFunction;
+    }
+
+    @SuppressWarnings("unchecked")
     @Override
     public Double getAccountBalance(String accountAddress) throws Exception {
-        return null;
+        Parameter scParameter = new Parameter();
+        scParameter.type = "String";
+        AbiFunction func = new AbiFunction(balanceFunction, scParameter);
+        func.name = balanceFunction;
+        func.setParamsValue(accountAddress);
+        Transaction tx = ontSdk.vm().makeInvokeCodeTransaction(Helper.reverse(smartContractAddress), null, BuildParams.serializeAbiFunction(func), account.getAddressU160().toBase58(), 30000, 0);
+        // Pre-executed by the node, nothing is signed or broadcast
+        Object ret = rpcCall("ontology.query.balance", () -> ontRpc.sendRawTransactionPreExec(tx.toHexString()));
+        Object result = ret instanceof Map ? ((Map<String, Object>) ret).get("Result") : ret;
+        if (result == null) {
+            throw new Exception(String.format("Failed to query balance of %s (%s)", accountAddress, ret));
+        }
+        String value = result.toString().isEmpty() ? "00" : result.toString();
+        return new BigDecimal(Helper.BigIntFromNeoBytes(Helper.hexToBytes(value))).doubleValue();
     }
 }
@@ -0,0 +1,65 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.ontio.core.block.Block;
+import com.github.ontio.core.transaction.Transaction;
+import com.github.ontio.network.connect.ConnectMgr;
+
+public class OntologyTransactionWatcher extends TransactionWatcher {
+    private ConnectMgr rpc = null;
+    private long pollInterval;
+    private int lastHeight = -1;
+    private ScheduledExecutorService poller = null;
+    private Logger logger = LogManager.getLogger(OntologyTransactionWatcher.class);
+
+    public OntologyTransactionWatcher(ConnectMgr rpc) {
+        this(rpc, 500);
+    }
+
+    public OntologyTransactionWatcher(ConnectMgr rpc, long pollIntervalMillis) {
+        this.rpc = rpc;
+        this.pollInterval = pollIntervalMillis;
+    }
+
+    @Override
+    protected void start() throws Exception {
+        lastHeight = rpc.getBlockHeight();
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ontology-tx-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll() {
+        try {
+            int height = rpc.getBlockHeight();
+            while (lastHeight < height) {
+                if (hasPending()) {
+                    Block block = rpc.getBlock(lastHeight + 1);
+                    for (Transaction rawTx : block.transactions) {
+                        notifyCommitted(rawTx.hash().toHexString(), true);
+                    }
+                }
+                lastHeight++;
+            }
+        } catch (Exception e) {
+            logger.debug(String.format("Failed to poll block %s (%s)", lastHeight + 1, e.toString()));
+        }
+    }
+
+    @Override
+    protected void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Hands submissions to a fixed number of drainers that send them back to back, instead of one
+// executor task per transaction. Drainers exit when the queue is empty and are restarted on demand.
+public class OrderingQueue<T, R> {
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger activeDrainers = new AtomicInteger();
+    private Function<T, R> sender = null;
+    private Executor executor = null;
+    private int concurrency;
+
+    private class Entry {
+        private T item;
+        private CompletableFuture<R> result = new CompletableFuture<>();
+    }
+
+    public OrderingQueue(Function<T, R> sender, Executor executor, int concurrency) {
+        this.sender = sender;
+        this.executor = executor;
+        this.concurrency = concurrency;
+    }
+
+    public CompletableFuture<R> submit(T item) {
+        Entry entry = new Entry();
+        entry.item = item;
+        queue.add(entry);
+        startDrainer();
+        return entry.result;
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    private void startDrainer() {
+        int active = activeDrainers.get();
+        while (active < concurrency) {
+            if (activeDrainers.compareAndSet(active, active + 1)) {
+                executor.execute(this::drain);
+                return;
+            }
+            active = activeDrainers.get();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                try {
+                    entry.result.complete(sender.apply(entry.item));
+                } catch (Throwable e) {
+                    entry.result.completeExceptionally(e);
+                }
+            }
+            activeDrainers.decrementAndGet();
+            // Re-check after leaving, an entry may have been added while this drainer was still counted
+            if (queue.isEmpty() || !reacquire()) {
+                return;
+            }
+        }
+    }
+
+    private boolean reacquire() {
+        int active = activeDrainers.get();
+        while (active < concurrency) {
+            if (activeDrainers.compareAndSet(active, active + 1)) {
+                return true;
+            }
+            active = activeDrainers.get();
+        }
+        return false;
+    }
+}
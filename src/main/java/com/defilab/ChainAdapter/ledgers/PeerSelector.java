@@ -0,0 +1,217 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hyperledger.fabric.sdk.Peer;
+
+import io.grpc.StatusException;
+import io.grpc.StatusRuntimeException;
+
+public class PeerSelector {
+    private static final int SAMPLE_SIZE = 128;
+    private final ConcurrentHashMap<String, PeerStats> peerStats = new ConcurrentHashMap<>();
+    private double alpha = 0.2;
+    private double hedgePercentile = 0.95;
+    private long minHedgeDelay = 5;
+    private long defaultHedgeDelay = 100;
+    private long failureBackoff = 5000;
+
+    public interface PeerCall<T> {
+        T call(Peer peer) throws Exception;
+    }
+
+    private class PeerStats {
+        private double ewma = 0;
+        private final long[] samples = new long[SAMPLE_SIZE];
+        private int sampleCount = 0;
+        private volatile long failedUntil = 0;
+
+        synchronized void record(long millis) {
+            ewma = sampleCount == 0 ? millis : alpha * millis + (1 - alpha) * ewma;
+            samples[sampleCount++ % SAMPLE_SIZE] = millis;
+            failedUntil = 0;
+        }
+
+        // A fast failure says nothing about latency, it only sends the peer to the back of the ranking for a while
+        void recordFailure() {
+            failedUntil = System.currentTimeMillis() + failureBackoff;
+        }
+
+        boolean isHealthy() {
+            return failedUntil <= System.currentTimeMillis();
+        }
+
+        synchronized double getEwma() {
+            return ewma;
+        }
+
+        synchronized long percentile(double percentile) {
+            if (sampleCount == 0) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, Math.min(sampleCount, SAMPLE_SIZE));
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(sorted.length - 1, Math.floor(percentile * sorted.length))];
+        }
+    }
+
+    public void setHedgePercentile(double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    public void setDefaultHedgeDelay(long defaultHedgeDelayMillis) {
+        this.defaultHedgeDelay = defaultHedgeDelayMillis;
+    }
+
+    public void setFailureBackoff(long failureBackoffMillis) {
+        this.failureBackoff = failureBackoffMillis;
+    }
+
+    public void record(Peer peer, long elapsedMillis) {
+        stats(peer).record(elapsedMillis);
+    }
+
+    public void recordFailure(Peer peer) {
+        stats(peer).recordFailure();
+    }
+
+    public boolean isHealthy(Peer peer) {
+        return stats(peer).isHealthy();
+    }
+
+    public double getLatency(Peer peer) {
+        return stats(peer).getEwma();
+    }
+
+    public long getLatencyPercentile(Peer peer, double percentile) {
+        return stats(peer).percentile(percentile);
+    }
+
+    // Healthy peers fastest first, then the ones that failed recently. Peers without samples yet rank as zero
+    // latency so they get probed
+    public List<Peer> rank(Collection<Peer> peers) {
+        // Keys are read once up front, samples and failures keep arriving while sorting
+        Map<Peer, Double> keys = new HashMap<>();
+        for (Peer peer : peers) {
+            keys.put(peer, isHealthy(peer) ? getLatency(peer) : Double.POSITIVE_INFINITY);
+        }
+        List<Peer> ret = new ArrayList<>(peers);
+        ret.sort(Comparator.comparingDouble(keys::get));
+        return ret;
+    }
+
+    public long getHedgeDelay(Peer peer) {
+        long delay = stats(peer).percentile(hedgePercentile);
+        return delay < 0 ? defaultHedgeDelay : Math.max(minHedgeDelay, delay);
+    }
+
+    public long getProposalWaitTime(Collection<Peer> peers, long maxWaitTime) {
+        long ret = 0;
+        for (Peer peer : peers) {
+            long p99 = stats(peer).percentile(0.99);
+            if (p99 < 0) {
+                return maxWaitTime;
+            }
+            ret = Math.max(ret, p99 * 3);
+        }
+        return Math.min(maxWaitTime, Math.max(500, ret));
+    }
+
+    // Sends the call to the fastest peer and, if it has not answered after its hedge delay or could not be reached,
+    // to the next one. The first answer wins, an application error included, a peer failure is returned only when
+    // every launched attempt failed.
+    public <T> CompletableFuture<T> hedge(Collection<Peer> peers, PeerCall<T> call, Executor executor, ScheduledExecutorService scheduler) {
+        List<Peer> ranked = rank(peers);
+        HedgedCall<T> hedgedCall = new HedgedCall<>(ranked, call, executor);
+        if (ranked.isEmpty()) {
+            hedgedCall.result.completeExceptionally(new IllegalStateException("No peers available"));
+            return hedgedCall.result;
+        }
+        hedgedCall.launchNext();
+        if (hedgedCall.attempts > 1) {
+            ScheduledFuture<?> hedgeTask = scheduler.schedule(() -> {
+                if (!hedgedCall.result.isDone()) {
+                    hedgedCall.launchNext();
+                }
+            }, getHedgeDelay(ranked.get(0)), TimeUnit.MILLISECONDS);
+            hedgedCall.result.whenComplete((value, e) -> hedgeTask.cancel(false));
+        }
+        return hedgedCall.result;
+    }
+
+    private class HedgedCall<T> {
+        private final List<Peer> ranked;
+        private final PeerCall<T> call;
+        private final Executor executor;
+        private final int attempts;
+        private final AtomicInteger launched = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        HedgedCall(List<Peer> ranked, PeerCall<T> call, Executor executor) {
+            this.ranked = ranked;
+            this.call = call;
+            this.executor = executor;
+            this.attempts = Math.min(2, ranked.size());
+        }
+
+        void launchNext() {
+            int attempt = launched.getAndIncrement();
+            if (attempt >= attempts) {
+                return;
+            }
+            Peer peer = ranked.get(attempt);
+            executor.execute(() -> {
+                long startTime = System.currentTimeMillis();
+                try {
+                    T value = call.call(peer);
+                    record(peer, System.currentTimeMillis() - startTime);
+                    result.complete(value);
+                } catch (Exception e) {
+                    if (!isPeerFailure(e)) {
+                        record(peer, System.currentTimeMillis() - startTime);
+                        result.completeExceptionally(e);
+                        return;
+                    }
+                    recordFailure(peer);
+                    if (failures.incrementAndGet() >= attempts) {
+                        result.completeExceptionally(e);
+                    } else {
+                        launchNext();
+                    }
+                }
+            });
+        }
+    }
+
+    // Only a peer that could not be reached or did not answer counts against it and is worth a retry elsewhere.
+    // An answer, even an error like a missing transaction or a chaincode error, is the same on every peer.
+    static boolean isPeerFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof StatusRuntimeException || cause instanceof StatusException
+                    || cause instanceof IOException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private PeerStats stats(Peer peer) {
+        return peerStats.computeIfAbsent(peer.getName(), name -> new PeerStats());
+    }
+}
@@ -0,0 +1,361 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Spreads offers over several ledgers (channels, chain codes or contracts) by consistent hash of offer_id.
+// Reads go to the shard owning the offer or transaction, heights and blocks are merged: block n is the union
+// of block n on every shard and each of its transactions is tagged with the shard it came from.
+public class ShardedLedger extends Ledger {
+    private static final int VIRTUAL_NODES = 160;
+    private static ExecutorService shardExecutor = null;
+    private Map<String, Ledger> shards = null;
+    private TreeMap<Long, String> ring = new TreeMap<>();
+    private Map<String, String> transactionShards = null;
+
+    public ShardedLedger(List<Ledger> shards) throws Exception {
+        this(nameShards(shards));
+    }
+
+    // Shard names place the shards on the ring, keep them stable when adding shards so offers keep their owner
+    public ShardedLedger(Map<String, Ledger> shards) throws Exception {
+        this(shards, 100000);
+    }
+
+    public ShardedLedger(Map<String, Ledger> shards, int maxTrackedTransactions) throws Exception {
+        if (shards.isEmpty()) {
+            throw new Exception("At least one shard is required");
+        }
+        this.shards = Collections.unmodifiableMap(new LinkedHashMap<>(shards));
+        for (String name : this.shards.keySet()) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(name + "#" + i), name);
+            }
+        }
+        transactionShards = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxTrackedTransactions;
+            }
+        });
+    }
+
+    private static Map<String, Ledger> nameShards(List<Ledger> shards) {
+        Map<String, Ledger> ret = new LinkedHashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            ret.put("shard-" + i, shards.get(i));
+        }
+        return ret;
+    }
+
+    public Map<String, Ledger> getShards() {
+        return shards;
+    }
+
+    public String getShardName(String offerId) {
+        Map.Entry<Long, String> owner = ring.ceilingEntry(hash(offerId));
+        return owner == null ? ring.firstEntry().getValue() : owner.getValue();
+    }
+
+    public Ledger getShard(String offerId) {
+        return shards.get(getShardName(offerId));
+    }
+
+    // Fan-out tasks block on shards that use the ledger executor themselves, so they must not run on it
+    private static synchronized ExecutorService getShardExecutor() {
+        if (shardExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            shardExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "shard-worker-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return shardExecutor;
+    }
+
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long ret = 0;
+            for (int i = 0; i < 8; i++) {
+                ret = (ret << 8) | (digest[i] & 0xff);
+            }
+            return ret;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String routeOffer(Map<String, Object> offer) throws Exception {
+        if (!offer.containsKey("offer_id")) {
+            throw new Exception("offer_id is required");
+        }
+        return getShardName(offer.get("offer_id").toString());
+    }
+
+    private String track(String shardName, String transactionId) {
+        if (transactionId != null) {
+            transactionShards.put(transactionId, shardName);
+        }
+        return transactionId;
+    }
+
+    @Override
+    public String putOffer(Map<String, Object> offer) throws Exception {
+        String shardName = routeOffer(offer);
+        return track(shardName, shards.get(shardName).putOffer(offer));
+    }
+
+    @Override
+    public String acceptOffer(Map<String, Object> offer) throws Exception {
+        String shardName = routeOffer(offer);
+        return track(shardName, shards.get(shardName).acceptOffer(offer));
+    }
+
+    @Override
+    public CompletableFuture<SubmittedTransaction> putOfferAsync(Map<String, Object> offer) {
+        return submitAsync(offer, true);
+    }
+
+    @Override
+    public CompletableFuture<SubmittedTransaction> acceptOfferAsync(Map<String, Object> offer) {
+        return submitAsync(offer, false);
+    }
+
+    private CompletableFuture<SubmittedTransaction> submitAsync(Map<String, Object> offer, boolean put) {
+        String shardName;
+        try {
+            shardName = routeOffer(offer);
+        } catch (Exception e) {
+            CompletableFuture<SubmittedTransaction> ret = new CompletableFuture<>();
+            ret.completeExceptionally(e);
+            return ret;
+        }
+        Ledger shard = shards.get(shardName);
+        return (put ? shard.putOfferAsync(offer) : shard.acceptOfferAsync(offer)).thenApply(tx -> {
+            track(shardName, tx.getTransactionId());
+            return tx;
+        });
+    }
+
+    @Override
+    public BatchResult putOffers(List<Map<String, Object>> offers) throws Exception {
+        return submitShardBatches(offers, true);
+    }
+
+    @Override
+    public BatchResult acceptOffers(List<Map<String, Object>> offers) throws Exception {
+        return submitShardBatches(offers, false);
+    }
+
+    // Every shard gets its part of the batch at once so its own batching (multi-offer functions, windows) applies
+    private BatchResult submitShardBatches(List<Map<String, Object>> offers, boolean put) throws Exception {
+        long startTime = System.nanoTime();
+        Map<String, List<Integer>> positions = new LinkedHashMap<>();
+        OfferResult[] results = new OfferResult[offers.size()];
+        for (int i = 0; i < offers.size(); i++) {
+            try {
+                positions.computeIfAbsent(routeOffer(offers.get(i)), name -> new ArrayList<>()).add(i);
+            } catch (Exception e) {
+                results[i] = new OfferResult(null, null, e, 0);
+            }
+        }
+        Map<String, CompletableFuture<BatchResult>> pending = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Integer>> shardPositions : positions.entrySet()) {
+            Ledger shard = shards.get(shardPositions.getKey());
+            List<Map<String, Object>> shardOffers = new ArrayList<>(shardPositions.getValue().size());
+            for (Integer position : shardPositions.getValue()) {
+                shardOffers.add(offers.get(position));
+            }
+            pending.put(shardPositions.getKey(), supplyAsync(() -> put ? shard.putOffers(shardOffers) : shard.acceptOffers(shardOffers), getShardExecutor()));
+        }
+        for (Map.Entry<String, CompletableFuture<BatchResult>> shardBatch : pending.entrySet()) {
+            List<Integer> shardPositions = positions.get(shardBatch.getKey());
+            try {
+                List<OfferResult> shardResults = shardBatch.getValue().get().getResults();
+                for (int i = 0; i < shardResults.size(); i++) {
+                    OfferResult result = shardResults.get(i);
+                    track(shardBatch.getKey(), result.getTransactionId());
+                    results[shardPositions.get(i)] = result;
+                }
+            } catch (ExecutionException e) {
+                for (Integer position : shardPositions) {
+                    Object offerId = offers.get(position).get("offer_id");
+                    results[position] = new OfferResult(offerId == null ? null : offerId.toString(), null, unwrap(e.getCause()), System.nanoTime() - startTime);
+                }
+            }
+        }
+        List<OfferResult> ret = new ArrayList<>(results.length);
+        Collections.addAll(ret, results);
+        return new BatchResult(ret, System.nanoTime() - startTime);
+    }
+
+    @Override
+    public Map<String, Object> getTransaction(String transactionId) throws Exception {
+        return loadTransaction(transactionId, () -> {
+            String shardName = transactionShards.get(transactionId);
+            if (shardName != null) {
+                return tag(shardName, shards.get(shardName).getTransaction(transactionId));
+            }
+            return findTransaction(transactionId);
+        });
+    }
+
+    // Transactions submitted by another process or evicted from the tracked set are looked up on every shard
+    private Map<String, Object> findTransaction(String transactionId) throws Exception {
+        Map<String, CompletableFuture<Map<String, Object>>> pending = new LinkedHashMap<>();
+        for (Map.Entry<String, Ledger> shard : shards.entrySet()) {
+            pending.put(shard.getKey(), supplyAsync(() -> shard.getValue().getTransaction(transactionId), getShardExecutor()));
+        }
+        Throwable lastError = null;
+        for (Map.Entry<String, CompletableFuture<Map<String, Object>>> shardTx : pending.entrySet()) {
+            try {
+                Map<String, Object> tx = shardTx.getValue().get();
+                if (tx != null) {
+                    track(shardTx.getKey(), transactionId);
+                    return tag(shardTx.getKey(), tx);
+                }
+            } catch (ExecutionException e) {
+                lastError = unwrap(e.getCause());
+            }
+        }
+        if (lastError != null) {
+            throw new Exception(String.format("Transaction %s not found on any shard (%s)", transactionId, lastError.getMessage()));
+        }
+        return null;
+    }
+
+    private static Map<String, Object> tag(String shardName, Map<String, Object> tx) {
+        if (tx == null) {
+            return null;
+        }
+        Map<String, Object> ret = new HashMap<>(tx);
+        ret.put("shard", shardName);
+        return ret;
+    }
+
+    // The offer id names the owning shard, no lookup is needed
+    @Override
+    public Boolean verifyTransaction(String offerId, String transactionId, String action) throws Exception {
+        return getShard(offerId).verifyTransaction(offerId, transactionId, action);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> verifyTransactionAsync(String offerId, String transactionId, String action, Integer timeout) throws Exception {
+        return getShard(offerId).verifyTransactionAsync(offerId, transactionId, action, timeout);
+    }
+
+    // Shards grow at their own pace, the merged chain only reaches as far as the slowest one. Scanners move
+    // their cursors by this height, a block some shard has not produced yet must not be read as empty.
+    @Override
+    public Integer getBlockchainHeight() throws Exception {
+        Integer ret = null;
+        for (Integer height : fanOut(Ledger::getBlockchainHeight).values()) {
+            ret = ret == null ? height : Math.min(ret, height);
+        }
+        return ret == null ? 0 : ret;
+    }
+
+    @Override
+    public Integer getLatestBlockNumber() throws Exception {
+        Integer ret = null;
+        for (Integer latestBlock : fanOut(Ledger::getLatestBlockNumber).values()) {
+            ret = ret == null ? latestBlock : Math.min(ret, latestBlock);
+        }
+        return ret == null ? -1 : ret;
+    }
+
+    // Sum of the account's balance on every shard, null when no shard knows the account
+    @Override
+    public Double getAccountBalance(String accountAddress) throws Exception {
+        Double ret = null;
+        for (Double balance : fanOut(shard -> shard.getAccountBalance(accountAddress)).values()) {
+            if (balance != null) {
+                ret = ret == null ? balance : ret + balance;
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public List<Map<String, Object>> getTransactionsFromBlock(Integer blockNumber) throws Exception {
+        return getTransactionsFromBlock(blockNumber, TransactionFilter.all());
+    }
+
+    @Override
+    public List<Map<String, Object>> getTransactionsFromBlock(Integer blockNumber, TransactionFilter filter) throws Exception {
+        Map<String, CompletableFuture<List<Map<String, Object>>>> pending = new LinkedHashMap<>();
+        for (Map.Entry<String, Ledger> shard : shards.entrySet()) {
+            pending.put(shard.getKey(), supplyAsync(() -> shard.getValue().getTransactionsFromBlock(blockNumber, filter), getShardExecutor()));
+        }
+        List<Map<String, Object>> ret = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<List<Map<String, Object>>>> shardBlock : pending.entrySet()) {
+            List<Map<String, Object>> transactions;
+            try {
+                transactions = shardBlock.getValue().get();
+            } catch (ExecutionException e) {
+                throw new Exception(String.format("Failed to get block %s from %s (%s)", blockNumber, shardBlock.getKey(), unwrap(e.getCause()).getMessage()));
+            }
+            for (Map<String, Object> tx : transactions) {
+                Map<String, Object> tagged = tag(shardBlock.getKey(), tx);
+                Object transactionId = tx.get("tx_id");
+                if (transactionId != null) {
+                    track(shardBlock.getKey(), transactionId.toString());
+                }
+                ret.add(tagged);
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    protected Map<String, Double> fetchAccountBalances(Collection<String> accounts) throws Exception {
+        Map<String, Double> ret = new LinkedHashMap<>();
+        for (String account : accounts) {
+            ret.put(account, null);
+        }
+        for (Map<String, Double> shardBalances : fanOut(shard -> shard.getAccountBalances(accounts)).values()) {
+            for (Map.Entry<String, Double> balance : shardBalances.entrySet()) {
+                if (balance.getValue() != null) {
+                    Double total = ret.get(balance.getKey());
+                    ret.put(balance.getKey(), total == null ? balance.getValue() : total + balance.getValue());
+                }
+            }
+        }
+        return ret;
+    }
+
+    private interface ShardCall<T> {
+        T call(Ledger shard) throws Exception;
+    }
+
+    private <T> Map<String, T> fanOut(ShardCall<T> call) throws Exception {
+        Map<String, CompletableFuture<T>> pending = new LinkedHashMap<>();
+        for (Map.Entry<String, Ledger> shard : shards.entrySet()) {
+            pending.put(shard.getKey(), supplyAsync(() -> call.call(shard.getValue()), getShardExecutor()));
+        }
+        Map<String, T> ret = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<T>> result : pending.entrySet()) {
+            try {
+                ret.put(result.getKey(), result.getValue().get());
+            } catch (ExecutionException e) {
+                throw new Exception(String.format("Shard %s failed (%s)", result.getKey(), unwrap(e.getCause()).getMessage()));
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,273 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.alibaba.fastjson.JSON;
+import com.defilab.ChainAdapter.index.IndexedTransaction;
+import com.defilab.ChainAdapter.metrics.LedgerMetrics;
+
+// In-process stand-in for a Fabric channel or Ontology node. Offers are endorsed after a configurable latency,
+// wait in a pending pool and are cut into a block every blockInterval. Committed transactions look like the
+// ones HyperLedger returns: the stored offer plus status, tx_id and block_number, with status false for
+// transactions that made it into a block but failed validation.
+public class SimulatedLedger extends Ledger {
+    private ScheduledExecutorService clock = null;
+    private long blockInterval;
+    private long endorsementLatency = 0;
+    private long endorsementJitter = 0;
+    private long commitLatency = 0;
+    private double endorsementFailureRate = 0;
+    private double commitFailureRate = 0;
+    private int maxBlockSize = 500;
+    private final ArrayDeque<PendingTransaction> pending = new ArrayDeque<>();
+    private final List<List<Map<String, Object>>> blocks = new ArrayList<>();
+    private final Map<String, Map<String, Object>> committed = new ConcurrentHashMap<>();
+    private final Map<String, Double> balances = new ConcurrentHashMap<>();
+    private volatile SimulatedTransactionWatcher blockWatcher = null;
+
+    public SimulatedLedger() {
+        this(1000);
+    }
+
+    public SimulatedLedger(long blockIntervalMillis) {
+        this.blockInterval = blockIntervalMillis;
+        // Genesis block, heights start at 1 as on Fabric
+        blocks.add(Collections.emptyList());
+        clock = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "simulated-ledger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        clock.scheduleAtFixedRate(this::cutBlock, blockInterval, blockInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public void setEndorsementLatency(long latencyMillis, long jitterMillis) {
+        this.endorsementLatency = latencyMillis;
+        this.endorsementJitter = jitterMillis;
+    }
+
+    // Minimum time between endorsement and the block a transaction is cut into, on top of the block interval
+    public void setCommitLatency(long latencyMillis) {
+        this.commitLatency = latencyMillis;
+    }
+
+    public void setEndorsementFailureRate(double endorsementFailureRate) {
+        this.endorsementFailureRate = endorsementFailureRate;
+    }
+
+    public void setCommitFailureRate(double commitFailureRate) {
+        this.commitFailureRate = commitFailureRate;
+    }
+
+    public void setMaxBlockSize(int maxBlockSize) {
+        this.maxBlockSize = maxBlockSize;
+    }
+
+    public void setAccountBalance(String accountAddress, Double balance) {
+        balances.put(accountAddress, balance);
+    }
+
+    public void close() {
+        clock.shutdownNow();
+    }
+
+    @Override
+    public String putOffer(Map<String, Object> offer) throws Exception {
+        return awaitEndorsement(endorse("PutOffer", offer));
+    }
+
+    @Override
+    public String acceptOffer(Map<String, Object> offer) throws Exception {
+        return awaitEndorsement(endorse("AcceptOffer", offer));
+    }
+
+    @Override
+    public CompletableFuture<SubmittedTransaction> putOfferAsync(Map<String, Object> offer) {
+        return endorse("PutOffer", offer).thenApply(txId -> new SubmittedTransaction(txId, awaitCommit(txId)));
+    }
+
+    @Override
+    public CompletableFuture<SubmittedTransaction> acceptOfferAsync(Map<String, Object> offer) {
+        return endorse("AcceptOffer", offer).thenApply(txId -> new SubmittedTransaction(txId, awaitCommit(txId)));
+    }
+
+    private String awaitEndorsement(CompletableFuture<String> endorsed) throws Exception {
+        try {
+            return endorsed.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    // Endorsement latency is served by the clock so simulated network time never holds a caller thread
+    private CompletableFuture<String> endorse(String action, Map<String, Object> offer) {
+        CompletableFuture<String> ret = new CompletableFuture<>();
+        if (!offer.containsKey("offer_id")) {
+            ret.completeExceptionally(new Exception("offer_id is required"));
+            return ret;
+        } else if ("AcceptOffer".equals(action) && !offer.containsKey("postman_receipt")) {
+            ret.completeExceptionally(new Exception("postman_receipt is required"));
+            return ret;
+        }
+        // Stored the way the chain code keeps it, encoded once at submission
+        String encoded = JSON.toJSONString(offer);
+        long startTime = LedgerMetrics.start("simulated.endorsement");
+        Runnable endorsement = () -> {
+            if (ThreadLocalRandom.current().nextDouble() < endorsementFailureRate) {
+                LedgerMetrics.stop("simulated.endorsement", null, startTime, false);
+                ret.completeExceptionally(new Exception(String.format("Endorsement of offer %s failed (simulated)", offer.get("offer_id"))));
+                return;
+            }
+            String txId = UUID.randomUUID().toString().replace("-", "");
+            synchronized (pending) {
+                pending.add(new PendingTransaction(txId, action, encoded, System.currentTimeMillis() + commitLatency));
+            }
+            LedgerMetrics.stop("simulated.endorsement", null, startTime, true);
+            ret.complete(txId);
+        };
+        long delay = endorsementLatency + (endorsementJitter > 0 ? ThreadLocalRandom.current().nextLong(endorsementJitter + 1) : 0);
+        try {
+            clock.schedule(endorsement, delay, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            ret.completeExceptionally(e);
+        }
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void cutBlock() {
+        List<PendingTransaction> ready = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (pending) {
+            // Endorsements complete on the clock thread, so the pool is ordered by readyAt
+            while (!pending.isEmpty() && pending.peek().readyAt <= now && ready.size() < maxBlockSize) {
+                ready.add(pending.poll());
+            }
+        }
+        if (ready.isEmpty()) {
+            return;
+        }
+        List<Map<String, Object>> block = new ArrayList<>(ready.size());
+        List<Map<String, Object>> committedTransactions;
+        synchronized (blocks) {
+            int blockNumber = blocks.size();
+            for (PendingTransaction pendingTx : ready) {
+                Map<String, Object> tx = (Map<String, Object>) JSON.parse(pendingTx.encodedOffer);
+                tx.put("action", pendingTx.action);
+                tx.put("status", ThreadLocalRandom.current().nextDouble() >= commitFailureRate);
+                tx.put("tx_id", pendingTx.transactionId);
+                tx.put("block_number", blockNumber);
+                block.add(Collections.unmodifiableMap(tx));
+            }
+            committedTransactions = Collections.unmodifiableList(block);
+            for (Map<String, Object> tx : committedTransactions) {
+                committed.put(tx.get("tx_id").toString(), tx);
+            }
+            blocks.add(committedTransactions);
+        }
+        SimulatedTransactionWatcher watcher = blockWatcher;
+        if (watcher != null) {
+            for (Map<String, Object> tx : committedTransactions) {
+                watcher.notifyCommitted(tx.get("tx_id").toString(), (Boolean) tx.get("status"));
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> getTransaction(String transactionId) throws Exception {
+        return loadTransaction(transactionId, () -> {
+            Map<String, Object> tx = committed.get(transactionId);
+            if (tx == null) {
+                throw new Exception(String.format("Transaction %s not found", transactionId));
+            }
+            return new HashMap<>(tx);
+        });
+    }
+
+    @Override
+    public Boolean verifyTransaction(String offerId, String transactionId, String action) throws Exception {
+        IndexedTransaction indexed = lookupIndexed(transactionId);
+        if (indexed != null) {
+            return offerId.equals(indexed.getOfferId()) && indexed.getStatus() && action.equals(indexed.getAction());
+        }
+        Map<String, Object> tx = committed.get(transactionId);
+        return tx != null && offerId.equals(String.valueOf(tx.get("offer_id"))) && (Boolean) tx.get("status") && action.equals(tx.get("action"));
+    }
+
+    @Override
+    protected TransactionWatcher createTransactionWatcher() {
+        blockWatcher = new SimulatedTransactionWatcher();
+        return blockWatcher;
+    }
+
+    @Override
+    public Integer getBlockchainHeight() throws Exception {
+        synchronized (blocks) {
+            return blocks.size();
+        }
+    }
+
+    @Override
+    public Double getAccountBalance(String accountAddress) throws Exception {
+        return balances.get(accountAddress);
+    }
+
+    @Override
+    public List<Map<String, Object>> getTransactionsFromBlock(Integer blockNumber) throws Exception {
+        List<Map<String, Object>> block;
+        synchronized (blocks) {
+            if (blockNumber < 0 || blockNumber >= blocks.size()) {
+                throw new Exception(String.format("Block %s does not exist", blockNumber));
+            }
+            block = blocks.get(blockNumber);
+        }
+        List<Map<String, Object>> ret = new ArrayList<>(block.size());
+        for (Map<String, Object> tx : block) {
+            ret.add(new HashMap<>(tx));
+        }
+        return ret;
+    }
+
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    private static class PendingTransaction {
+        private String transactionId;
+        private String action;
+        private String encodedOffer;
+        private long readyAt;
+
+        PendingTransaction(String transactionId, String action, String encodedOffer, long readyAt) {
+            this.transactionId = transactionId;
+            this.action = action;
+            this.encodedOffer = encodedOffer;
+            this.readyAt = readyAt;
+        }
+    }
+
+    private static class SimulatedTransactionWatcher extends TransactionWatcher {
+        @Override
+        protected void start() {
+        }
+
+        @Override
+        protected void stop() {
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.util.concurrent.CompletableFuture;
+
+public class SubmittedTransaction {
+    private String transactionId;
+    private CompletableFuture<Boolean> commitFuture;
+
+    public SubmittedTransaction(String transactionId, CompletableFuture<Boolean> commitFuture) {
+        this.transactionId = transactionId;
+        this.commitFuture = commitFuture;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public CompletableFuture<Boolean> getCommitFuture() {
+        return commitFuture;
+    }
+}
@@ -0,0 +1,150 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+public class TransactionCache {
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxWeight;
+    private long negativeTtl;
+    private ToLongFunction<Map<String, Object>> weigher = null;
+    private long weight = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static class Entry {
+        private Map<String, Object> transaction;
+        private long weight;
+        private long expiresAt;
+    }
+
+    public TransactionCache(long maxEntries) {
+        this(maxEntries, 500, transaction -> 1);
+    }
+
+    public TransactionCache(long maxWeight, long negativeTtlMillis, ToLongFunction<Map<String, Object>> weigher) {
+        this.maxWeight = maxWeight;
+        this.negativeTtl = negativeTtlMillis;
+        this.weigher = weigher;
+    }
+
+    public synchronized Map<String, Object> getIfPresent(String transactionId) {
+        Entry entry = entries.get(transactionId);
+        if (entry == null || entry.transaction == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copy(entry.transaction);
+    }
+
+    public synchronized boolean isKnownMissing(String transactionId) {
+        Entry entry = entries.get(transactionId);
+        if (entry == null || entry.transaction != null) {
+            return false;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            remove(transactionId);
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized void put(String transactionId, Map<String, Object> transaction) {
+        Entry entry = new Entry();
+        entry.transaction = copy(transaction);
+        entry.weight = Math.max(1, weigher.applyAsLong(transaction));
+        entry.expiresAt = Long.MAX_VALUE;
+        store(transactionId, entry);
+    }
+
+    // Not found / not yet committed results only live for the negative TTL so they never hide a later commit
+    public synchronized void putMissing(String transactionId) {
+        Entry current = entries.get(transactionId);
+        if (current != null && current.transaction != null) {
+            return;
+        }
+        Entry entry = new Entry();
+        entry.weight = 1;
+        entry.expiresAt = System.currentTimeMillis() + negativeTtl;
+        store(transactionId, entry);
+    }
+
+    public synchronized void invalidate(String transactionId) {
+        Entry entry = entries.get(transactionId);
+        if (entry != null && entry.transaction == null) {
+            remove(transactionId);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private void store(String transactionId, Entry entry) {
+        remove(transactionId);
+        entries.put(transactionId, entry);
+        weight += entry.weight;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(String transactionId) {
+        Entry entry = entries.remove(transactionId);
+        if (entry != null) {
+            weight -= entry.weight;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T value) {
+        if (value instanceof Map) {
+            Map<String, Object> ret = new HashMap<>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                ret.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return (T) ret;
+        } else if (value instanceof List) {
+            List<Object> ret = new ArrayList<>();
+            for (Object item : (List<Object>) value) {
+                ret.add(copy(item));
+            }
+            return (T) ret;
+        }
+        return value;
+    }
+}
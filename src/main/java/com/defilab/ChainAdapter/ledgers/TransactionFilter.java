@@ -0,0 +1,133 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.defilab.ChainAdapter.codec.OfferView;
+
+public class TransactionFilter {
+    private static final TransactionFilter ALL = new TransactionFilter(null, null);
+    private Set<String> actions = null;
+    private Set<String> offerIds = null;
+    private byte[][] actionPatterns = null;
+    private byte[][] offerIdPatterns = null;
+
+    private TransactionFilter(Set<String> actions, Set<String> offerIds) {
+        this.actions = actions;
+        this.offerIds = offerIds;
+        this.actionPatterns = toPatterns(actions);
+        this.offerIdPatterns = toPatterns(offerIds);
+    }
+
+    public static TransactionFilter all() {
+        return ALL;
+    }
+
+    public static TransactionFilter byActions(String... actions) {
+        return ALL.withActions(Arrays.asList(actions));
+    }
+
+    public static TransactionFilter byOfferIds(String... offerIds) {
+        return ALL.withOfferIds(Arrays.asList(offerIds));
+    }
+
+    public TransactionFilter withActions(Collection<String> actions) {
+        return new TransactionFilter(new HashSet<>(actions), offerIds);
+    }
+
+    public TransactionFilter withOfferIds(Collection<String> offerIds) {
+        return new TransactionFilter(actions, new HashSet<>(offerIds));
+    }
+
+    public boolean isAll() {
+        return actions == null && offerIds == null;
+    }
+
+    // Cheap check on the undecoded transaction bytes, a false return means the
+    // transaction can not match and does not need to be parsed
+    public boolean mightMatch(byte[] raw) {
+        return isAll() || mightMatch(ByteBuffer.wrap(raw));
+    }
+
+    public boolean mightMatch(ByteBuffer raw) {
+        return isAll() || (containsAny(raw, actionPatterns) && containsAny(raw, offerIdPatterns));
+    }
+
+    // Ontology offers do not always carry the action, it is only checked when present
+    public boolean matches(Map<String, Object> transaction) {
+        if (transaction == null) {
+            return false;
+        }
+        if (actions != null && transaction.get("action") != null && !actions.contains(transaction.get("action").toString())) {
+            return false;
+        }
+        if (offerIds != null && (transaction.get("offer_id") == null || !offerIds.contains(transaction.get("offer_id").toString()))) {
+            return false;
+        }
+        return true;
+    }
+
+    public boolean matches(OfferView offer) throws IOException {
+        if (offer == null) {
+            return false;
+        }
+        if (actions != null) {
+            String action = offer.getAction();
+            if (action != null && !actions.contains(action)) {
+                return false;
+            }
+        }
+        if (offerIds != null) {
+            String offerId = offer.getOfferId();
+            if (offerId == null || !offerIds.contains(offerId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[][] toPatterns(Set<String> values) {
+        if (values == null) {
+            return null;
+        }
+        byte[][] ret = new byte[values.size()][];
+        int i = 0;
+        for (String value : values) {
+            ret[i++] = value.getBytes(StandardCharsets.UTF_8);
+        }
+        return ret;
+    }
+
+    private static boolean containsAny(ByteBuffer raw, byte[][] patterns) {
+        if (patterns == null) {
+            return true;
+        }
+        for (byte[] pattern : patterns) {
+            if (indexOf(raw, pattern) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static int indexOf(ByteBuffer raw, byte[] pattern) {
+        int start = raw.position();
+        int end = raw.limit() - pattern.length;
+        outer:
+        for (int i = start; i <= end; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (raw.get(i + j) != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i - start;
+        }
+        return -1;
+    }
+}
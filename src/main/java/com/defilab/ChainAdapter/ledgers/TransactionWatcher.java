@@ -0,0 +1,75 @@
+package com.defilab.ChainAdapter.ledgers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+public abstract class TransactionWatcher implements AutoCloseable {
+    private final ConcurrentHashMap<String, List<CompletableFuture<Boolean>>> waiters = new ConcurrentHashMap<>();
+    private boolean started = false;
+
+    protected abstract void start() throws Exception;
+
+    protected abstract void stop();
+
+    // A watch after close starts the watcher again
+    @Override
+    public synchronized void close() {
+        stop();
+        started = false;
+    }
+
+    public CompletableFuture<Boolean> watch(String transactionId) {
+        CompletableFuture<Boolean> committed = new CompletableFuture<>();
+        waiters.compute(transactionId, (txId, futures) -> {
+            List<CompletableFuture<Boolean>> ret = futures == null ? new ArrayList<>() : futures;
+            ret.add(committed);
+            return ret;
+        });
+        try {
+            ensureStarted();
+        } catch (Exception e) {
+            unwatch(transactionId, committed);
+            committed.completeExceptionally(e);
+        }
+        return committed;
+    }
+
+    public void unwatch(String transactionId, CompletableFuture<Boolean> committed) {
+        waiters.computeIfPresent(transactionId, (txId, futures) -> {
+            futures.remove(committed);
+            return futures.isEmpty() ? null : futures;
+        });
+    }
+
+    public int getPendingCount() {
+        return waiters.size();
+    }
+
+    protected Set<String> getPendingTransactionIds() {
+        return new HashSet<>(waiters.keySet());
+    }
+
+    protected boolean hasPending() {
+        return !waiters.isEmpty();
+    }
+
+    protected void notifyCommitted(String transactionId, boolean valid) {
+        List<CompletableFuture<Boolean>> futures = waiters.remove(transactionId);
+        if (futures != null) {
+            for (CompletableFuture<Boolean> committed : futures) {
+                committed.complete(valid);
+            }
+        }
+    }
+
+    private synchronized void ensureStarted() throws Exception {
+        if (!started) {
+            start();
+            started = true;
+        }
+    }
+}
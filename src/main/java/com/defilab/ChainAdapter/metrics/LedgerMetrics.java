@@ -0,0 +1,158 @@
+package com.defilab.ChainAdapter.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToLongFunction;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Process wide latency and error registry for ledger operations. Disabled by default, in which case
+// start() returns 0 without reading the clock and stop() returns right away.
+// Per target stats are kept under "operation@target".
+public class LedgerMetrics implements LedgerMetricsMXBean {
+    public static final String OBJECT_NAME = "com.defilab.ChainAdapter:type=LedgerMetrics";
+    private static final LedgerMetrics instance = new LedgerMetrics();
+    private static volatile boolean enabled = false;
+    private final ConcurrentHashMap<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<LedgerMetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    public static LedgerMetrics getInstance() {
+        return instance;
+    }
+
+    public static long start(String operation) {
+        if (!enabled) {
+            return 0;
+        }
+        instance.stats(operation).begin();
+        return System.nanoTime();
+    }
+
+    public static void stop(String operation, String target, long startTime, boolean success) {
+        stop(operation, target, startTime, success ? LedgerMetricsListener.Outcome.SUCCESS : LedgerMetricsListener.Outcome.ERROR);
+    }
+
+    public static void stop(String operation, String target, long startTime, LedgerMetricsListener.Outcome outcome) {
+        if (startTime == 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - startTime;
+        OperationStats stats = instance.stats(operation);
+        stats.end();
+        instance.recordStats(operation, target, elapsed, outcome);
+    }
+
+    // For phases measured elsewhere, does not touch the in-flight count
+    public static void record(String operation, String target, long elapsedNanos, LedgerMetricsListener.Outcome outcome) {
+        if (enabled) {
+            instance.recordStats(operation, target, elapsedNanos, outcome);
+        }
+    }
+
+    private void recordStats(String operation, String target, long elapsedNanos, LedgerMetricsListener.Outcome outcome) {
+        stats(operation).record(elapsedNanos, outcome);
+        if (target != null) {
+            stats(operation + "@" + target).record(elapsedNanos, outcome);
+        }
+        for (LedgerMetricsListener listener : listeners) {
+            listener.onOperation(operation, target, elapsedNanos, outcome);
+        }
+    }
+
+    public void addListener(LedgerMetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(LedgerMetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    public OperationStats getStats(String operation) {
+        return operations.get(operation);
+    }
+
+    public void registerMBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(this, name);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        LedgerMetrics.enabled = enabled;
+    }
+
+    @Override
+    public void reset() {
+        operations.clear();
+    }
+
+    @Override
+    public Map<String, Long> getCounts() {
+        return collect(OperationStats::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getInFlight() {
+        return collect(OperationStats::getInFlight);
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        return collect(OperationStats::getErrors);
+    }
+
+    @Override
+    public Map<String, Long> getTimeouts() {
+        return collect(OperationStats::getTimeouts);
+    }
+
+    @Override
+    public Map<String, Long> getMeanMicros() {
+        return collect(stats -> (long) stats.getLatency().getMean() / 1000);
+    }
+
+    @Override
+    public Map<String, Long> getP50Micros() {
+        return collect(stats -> stats.getLatency().getPercentile(0.5) / 1000);
+    }
+
+    @Override
+    public Map<String, Long> getP99Micros() {
+        return collect(stats -> stats.getLatency().getPercentile(0.99) / 1000);
+    }
+
+    @Override
+    public Map<String, Long> getP999Micros() {
+        return collect(stats -> stats.getLatency().getPercentile(0.999) / 1000);
+    }
+
+    @Override
+    public Map<String, Long> getMaxMicros() {
+        return collect(stats -> stats.getLatency().getMax() / 1000);
+    }
+
+    private Map<String, Long> collect(ToLongFunction<OperationStats> value) {
+        Map<String, Long> ret = new TreeMap<>();
+        for (Map.Entry<String, OperationStats> entry : operations.entrySet()) {
+            ret.put(entry.getKey(), value.applyAsLong(entry.getValue()));
+        }
+        return ret;
+    }
+
+    private OperationStats stats(String operation) {
+        OperationStats stats = operations.get(operation);
+        return stats != null ? stats : operations.computeIfAbsent(operation, key -> new OperationStats());
+    }
+}
@@ -0,0 +1,12 @@
+package com.defilab.ChainAdapter.metrics;
+
+public interface LedgerMetricsListener {
+    enum Outcome {
+        SUCCESS,
+        ERROR,
+        TIMEOUT
+    }
+
+    // target is the peer or endpoint the operation ran against, null when it does not apply
+    void onOperation(String operation, String target, long elapsedNanos, Outcome outcome);
+}
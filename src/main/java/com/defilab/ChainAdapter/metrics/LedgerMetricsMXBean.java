@@ -0,0 +1,18 @@
+package com.defilab.ChainAdapter.metrics;
+
+import java.util.Map;
+
+public interface LedgerMetricsMXBean {
+    boolean isEnabled();
+    void setEnabled(boolean enabled);
+    void reset();
+    Map<String, Long> getCounts();
+    Map<String, Long> getInFlight();
+    Map<String, Long> getErrors();
+    Map<String, Long> getTimeouts();
+    Map<String, Long> getMeanMicros();
+    Map<String, Long> getP50Micros();
+    Map<String, Long> getP99Micros();
+    Map<String, Long> getP999Micros();
+    Map<String, Long> getMaxMicros();
+}
@@ -0,0 +1,47 @@
+package com.defilab.ChainAdapter.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class OperationStats {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    void begin() {
+        inFlight.increment();
+    }
+
+    void end() {
+        inFlight.decrement();
+    }
+
+    void record(long elapsedNanos, LedgerMetricsListener.Outcome outcome) {
+        latency.record(elapsedNanos);
+        if (outcome == LedgerMetricsListener.Outcome.ERROR) {
+            errors.increment();
+        } else if (outcome == LedgerMetricsListener.Outcome.TIMEOUT) {
+            timeouts.increment();
+        }
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+}
@@ -0,0 +1,266 @@
+package com.defilab.ChainAdapter.tools;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.defilab.ChainAdapter.ledgers.Ledger;
+import com.defilab.ChainAdapter.ledgers.SimulatedLedger;
+import com.defilab.ChainAdapter.metrics.LatencyHistogram;
+
+// Drives a ledger with producer threads calling putOffer and verifier threads calling verifyTransaction on
+// what was submitted, the way a client of the adapter would. Latencies are in microseconds.
+public class LoadGenerator {
+    private static final Object END = new Object();
+    private Ledger ledger = null;
+    private int producers = 8;
+    private int verifiers = 8;
+    private long duration = 30;
+    private long warmup = 5;
+    private int verifyTimeout = 60;
+    private String runId = Long.toHexString(System.currentTimeMillis());
+    private Logger logger = LogManager.getLogger(LoadGenerator.class);
+
+    public LoadGenerator(Ledger ledger) {
+        this.ledger = ledger;
+    }
+
+    public LoadGenerator setProducers(int producers) {
+        this.producers = producers;
+        return this;
+    }
+
+    public LoadGenerator setVerifiers(int verifiers) {
+        this.verifiers = verifiers;
+        return this;
+    }
+
+    public LoadGenerator setDuration(long seconds) {
+        this.duration = seconds;
+        return this;
+    }
+
+    // Operations started during the warmup are executed but not recorded
+    public LoadGenerator setWarmup(long seconds) {
+        this.warmup = seconds;
+        return this;
+    }
+
+    public LoadGenerator setVerifyTimeout(int seconds) {
+        this.verifyTimeout = seconds;
+        return this;
+    }
+
+    public Report run() throws InterruptedException {
+        Report report = new Report();
+        LinkedBlockingQueue<Object> submitted = new LinkedBlockingQueue<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger offerCount = new AtomicInteger();
+        long startTime = System.nanoTime();
+        long recordFrom = startTime + TimeUnit.SECONDS.toNanos(warmup);
+        long stopAt = recordFrom + TimeUnit.SECONDS.toNanos(duration);
+
+        ExecutorService producerPool = Executors.newFixedThreadPool(producers, namedThreads("load-producer"));
+        ExecutorService verifierPool = Executors.newFixedThreadPool(verifiers, namedThreads("load-verifier"));
+        for (int i = 0; i < producers; i++) {
+            producerPool.execute(() -> {
+                while (running.get() && System.nanoTime() < stopAt) {
+                    Map<String, Object> offer = newOffer(offerCount.incrementAndGet());
+                    long submitTime = System.nanoTime();
+                    boolean recorded = submitTime >= recordFrom;
+                    try {
+                        String txId = ledger.putOffer(offer);
+                        if (txId == null) {
+                            throw new Exception("putOffer returned no transaction id");
+                        }
+                        if (recorded) {
+                            report.submitLatency.record((System.nanoTime() - submitTime) / 1000);
+                        }
+                        submitted.add(new Submission(offer.get("offer_id").toString(), txId, submitTime, recorded));
+                    } catch (Exception e) {
+                        if (recorded) {
+                            report.submitFailures.increment();
+                        }
+                        logger.debug(String.format("Failed to submit offer %s (%s)", offer.get("offer_id"), e.getMessage()));
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < verifiers; i++) {
+            verifierPool.execute(() -> {
+                try {
+                    for (Object next = submitted.take(); next != END; next = submitted.take()) {
+                        verify((Submission) next, report);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        producerPool.shutdown();
+        if (!producerPool.awaitTermination(warmup + duration + 60, TimeUnit.SECONDS)) {
+            running.set(false);
+        }
+        long submitEndTime = System.nanoTime();
+        for (int i = 0; i < verifiers; i++) {
+            submitted.add(END);
+        }
+        verifierPool.shutdown();
+        verifierPool.awaitTermination(verifyTimeout + 60, TimeUnit.SECONDS);
+        report.submitNanos = Math.max(0, submitEndTime - recordFrom);
+        report.verifyNanos = Math.max(0, report.lastVerified.get() - recordFrom);
+        return report;
+    }
+
+    private void verify(Submission submission, Report report) {
+        long verifyTime = System.nanoTime();
+        boolean verified;
+        try {
+            verified = Boolean.TRUE.equals(ledger.verifyTransaction(submission.offerId, submission.transactionId, "PutOffer", verifyTimeout));
+        } catch (Exception e) {
+            verified = false;
+            logger.debug(String.format("Failed to verify transaction %s (%s)", submission.transactionId, e.getMessage()));
+        }
+        if (!submission.recorded) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (verified) {
+            report.verifyLatency.record((now - verifyTime) / 1000);
+            report.endToEndLatency.record((now - submission.submitTime) / 1000);
+            report.lastVerified.accumulateAndGet(now, Math::max);
+        } else {
+            report.verifyFailures.increment();
+        }
+    }
+
+    private Map<String, Object> newOffer(int sequence) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<String, Object> price = new HashMap<>();
+        price.put("amount", Math.round(random.nextDouble(0.01, 5000) * 10000) / 10000.0);
+        price.put("currency", "PTS");
+        Map<String, Object> body = new HashMap<>();
+        body.put("seller", String.format("did:defi:%016x%016x", random.nextLong(), random.nextLong()));
+        body.put("buyer", String.format("did:defi:%016x%016x", random.nextLong(), random.nextLong()));
+        body.put("price", price);
+        body.put("expires_at", System.currentTimeMillis() / 1000 + 3600);
+        Map<String, Object> offer = new HashMap<>();
+        offer.put("offer_id", String.format("load-%s-%08d", runId, sequence));
+        offer.put("action", "PutOffer");
+        offer.put("timestamp", System.currentTimeMillis() / 1000);
+        offer.put("offer_body", body);
+        return offer;
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class Submission {
+        private String offerId;
+        private String transactionId;
+        private long submitTime;
+        private boolean recorded;
+
+        Submission(String offerId, String transactionId, long submitTime, boolean recorded) {
+            this.offerId = offerId;
+            this.transactionId = transactionId;
+            this.submitTime = submitTime;
+            this.recorded = recorded;
+        }
+    }
+
+    public static class Report {
+        private final LatencyHistogram submitLatency = new LatencyHistogram();
+        private final LatencyHistogram verifyLatency = new LatencyHistogram();
+        private final LatencyHistogram endToEndLatency = new LatencyHistogram();
+        private final LongAdder submitFailures = new LongAdder();
+        private final LongAdder verifyFailures = new LongAdder();
+        private final AtomicLong lastVerified = new AtomicLong();
+        private long submitNanos;
+        private long verifyNanos;
+
+        public LatencyHistogram getSubmitLatency() {
+            return submitLatency;
+        }
+
+        public LatencyHistogram getVerifyLatency() {
+            return verifyLatency;
+        }
+
+        public LatencyHistogram getEndToEndLatency() {
+            return endToEndLatency;
+        }
+
+        public long getSubmitFailures() {
+            return submitFailures.sum();
+        }
+
+        public long getVerifyFailures() {
+            return verifyFailures.sum();
+        }
+
+        public double getSubmitThroughput() {
+            return submitNanos == 0 ? 0 : submitLatency.getCount() * 1e9 / submitNanos;
+        }
+
+        // Offers submitted and verified per second over the measured window
+        public double getSustainedThroughput() {
+            return verifyNanos == 0 ? 0 : endToEndLatency.getCount() * 1e9 / verifyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("submitted %s (%s failed), %.1f tx/s%n", submitLatency.getCount(), getSubmitFailures(), getSubmitThroughput())
+                    + String.format("verified %s (%s failed), %.1f tx/s sustained%n", endToEndLatency.getCount(), getVerifyFailures(), getSustainedThroughput())
+                    + format("submit", submitLatency) + format("verify", verifyLatency) + format("end to end", endToEndLatency);
+        }
+
+        private static String format(String name, LatencyHistogram histogram) {
+            return String.format("%-10s p50 %.1f ms, p99 %.1f ms, p999 %.1f ms, max %.1f ms%n", name,
+                    histogram.getPercentile(0.5) / 1e3, histogram.getPercentile(0.99) / 1e3,
+                    histogram.getPercentile(0.999) / 1e3, histogram.getMax() / 1e3);
+        }
+    }
+
+    // Runs against a SimulatedLedger:
+    // producers verifiers seconds blockIntervalMillis endorsementLatencyMillis endorsementFailureRate commitFailureRate
+    public static void main(String[] args) throws Exception {
+        int producers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int verifiers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 30;
+        long blockInterval = args.length > 3 ? Long.parseLong(args[3]) : 1000;
+        long endorsementLatency = args.length > 4 ? Long.parseLong(args[4]) : 50;
+        double endorsementFailureRate = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+        double commitFailureRate = args.length > 6 ? Double.parseDouble(args[6]) : 0;
+
+        SimulatedLedger ledger = new SimulatedLedger(blockInterval);
+        ledger.setEndorsementLatency(endorsementLatency, endorsementLatency / 2);
+        ledger.setEndorsementFailureRate(endorsementFailureRate);
+        ledger.setCommitFailureRate(commitFailureRate);
+        try {
+            Report report = new LoadGenerator(ledger).setProducers(producers).setVerifiers(verifiers).setDuration(seconds).run();
+            System.out.print(report);
+        } finally {
+            ledger.close();
+        }
+    }
+}
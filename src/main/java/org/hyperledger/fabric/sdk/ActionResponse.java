@@ -0,0 +1,58 @@
+package org.hyperledger.fabric.sdk;
+
+import java.nio.ByteBuffer;
+
+import org.hyperledger.fabric.protos.peer.FabricTransaction;
+
+import com.google.protobuf.ByteString;
+
+public class ActionResponse {
+    // Set on actions read outside of a block, where there is no validation code to go by
+    public static final int UNKNOWN_VALIDATION_CODE = -1;
+    private String transactionId;
+    private int status;
+    private String message;
+    private ByteString payload;
+    private int validationCode;
+
+    ActionResponse(String transactionId, int status, String message, ByteString payload, int validationCode) {
+        this.transactionId = transactionId;
+        this.status = status;
+        this.message = message;
+        this.payload = payload;
+        this.validationCode = validationCode;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public int getValidationCode() {
+        return validationCode;
+    }
+
+    // Whether the committer accepted the transaction, an endorsed action can still be invalidated (e.g. MVCC conflict)
+    public boolean isValid() {
+        return validationCode == FabricTransaction.TxValidationCode.VALID_VALUE;
+    }
+
+    public ByteString getPayload() {
+        return payload;
+    }
+
+    public ByteBuffer getPayloadBuffer() {
+        return payload.asReadOnlyByteBuffer();
+    }
+
+    public String getPayloadUtf8() {
+        return payload.toStringUtf8();
+    }
+}
@@ -3,21 +3,75 @@ package org.hyperledger.fabric.sdk;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.hyperledger.fabric.protos.common.Common;
+
+import com.defilab.ChainAdapter.metrics.LedgerMetrics;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
 
 public class PublicEnvelopeDeserializer {
+    public static List<ActionResponse> parseActions(ByteString byteString) {
+        long startTime = LedgerMetrics.start("fabric.decode");
+        boolean success = false;
+        try {
+            List<ActionResponse> ret = new ArrayList<>();
+            parseActions(new TransactionPayloadDeserializer(byteString), ActionResponse.UNKNOWN_VALIDATION_CODE, ret);
+            success = true;
+            return ret;
+        } finally {
+            LedgerMetrics.stop("fabric.decode", null, startTime, success);
+        }
+    }
+
+    public static List<ActionResponse> parseBlock(Common.Block block) throws InvalidProtocolBufferException {
+        long startTime = LedgerMetrics.start("fabric.decode.block");
+        boolean success = false;
+        try {
+            List<ActionResponse> ret = new ArrayList<>();
+            ByteString validationCodes = getValidationCodes(block);
+            List<ByteString> envelopes = block.getData().getDataList();
+            for (int i = 0; i < envelopes.size(); i++) {
+                TransactionPayloadDeserializer payload = new TransactionPayloadDeserializer(Common.Envelope.parseFrom(envelopes.get(i)).getPayload());
+                if (payload.getHeader().getChannelHeader().getType() == Common.HeaderType.ENDORSER_TRANSACTION_VALUE) {
+                    int validationCode = i < validationCodes.size() ? validationCodes.byteAt(i) & 0xFF : ActionResponse.UNKNOWN_VALIDATION_CODE;
+                    parseActions(payload, validationCode, ret);
+                }
+            }
+            success = true;
+            return ret;
+        } finally {
+            LedgerMetrics.stop("fabric.decode.block", null, startTime, success);
+        }
+    }
+
+    // The committer's verdict on each envelope, one TxValidationCode byte per envelope in block order
+    private static ByteString getValidationCodes(Common.Block block) {
+        if (block.getMetadata().getMetadataCount() <= Common.BlockMetadataIndex.TRANSACTIONS_FILTER_VALUE) {
+            return ByteString.EMPTY;
+        }
+        return block.getMetadata().getMetadata(Common.BlockMetadataIndex.TRANSACTIONS_FILTER_VALUE);
+    }
+
+    private static void parseActions(TransactionPayloadDeserializer payload, int validationCode, List<ActionResponse> ret) {
+        String txId = payload.getHeader().getChannelHeader().getTxId();
+        for (TransactionActionDeserializer txAction : payload.getTransaction().getTransactionActions()) {
+            ChaincodeActionDeserializer chaincodeAction = txAction.getPayload().getAction().getProposalResponsePayload().getExtension();
+            ret.add(new ActionResponse(txId, chaincodeAction.getResponseStatus(), chaincodeAction.getResponseMessage(), chaincodeAction.getResponsePayload(), validationCode));
+        }
+    }
+
     public static List<String> parseResponsePayloads(ByteString byteString) {
         List<String> ret = new ArrayList<>();
-        for (TransactionActionDeserializer txAction : new TransactionPayloadDeserializer(byteString).getTransaction().getTransactionActions()) {
-            ret.add(new String(txAction.getPayload().getAction().getProposalResponsePayload().getExtension().getResponsePayload().toByteArray()));
+        for (ActionResponse action : parseActions(byteString)) {
+            ret.add(action.getPayloadUtf8());
         }
         return ret;
     }
     
     public static List<String> parseResponseMessages(ByteString byteString) {
         List<String> ret = new ArrayList<>();
-        for (TransactionActionDeserializer txAction : new TransactionPayloadDeserializer(byteString).getTransaction().getTransactionActions()) {
-            ret.add(txAction.getPayload().getAction().getProposalResponsePayload().getExtension().getResponseMessage());
+        for (ActionResponse action : parseActions(byteString)) {
+            ret.add(action.getMessage());
         }
         return ret;
     }